@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jeffy.phoenix;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import jdk.jfr.Category;
+import jdk.jfr.Configuration;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+
+/**
+ * @Author Jeffy
+ * @Email: renwu58@gmail.com
+ *
+ *         测试过程中的Java Flight Recorder录制。启动时自动开始录制，结束时写入文件，
+ *         用于区分时间花在生成数据、队列等待、绑定执行还是提交上。
+ *
+ *         需要 JDK 8u262 及以上或 JDK 11+ 提供的 jdk.jfr 包，只由 HarnessTrace 按类名加载。
+ *         录制保留的数据不超过 maxSize，长时间运行时丢弃最早的数据；结束时的汇总由 HarnessTrace 在进程内累计，覆盖整个测试。
+ *
+ */
+class HarnessRecording extends HarnessTrace {
+	private static final String PREFIX = "com.jeffy.phoenix.";
+	private static final List<Class<? extends Event>> TYPES = new ArrayList<>();
+
+	static {
+		TYPES.add(GenerateEvent.class);
+		TYPES.add(QueuePutEvent.class);
+		TYPES.add(QueueTakeEvent.class);
+		TYPES.add(UpsertEvent.class);
+		TYPES.add(CommitEvent.class);
+	}
+
+	private final Path file;
+	private final long maxSize;
+	private Recording recording;
+
+	public HarnessRecording(String file, long maxSize) {
+		this.file = Paths.get(file);
+		this.maxSize = maxSize;
+	}
+
+	@Override
+	protected Span span(Stage stage) {
+		HarnessEvent event;
+		switch (stage) {
+		case GENERATE:
+			event = new GenerateEvent();
+			break;
+		case QUEUE_PUT:
+			event = new QueuePutEvent();
+			break;
+		case QUEUE_TAKE:
+			event = new QueueTakeEvent();
+			break;
+		case UPSERT:
+			event = new UpsertEvent();
+			break;
+		default:
+			event = new CommitEvent();
+			break;
+		}
+		event.owner = this;
+		event.stage = stage;
+		event.beginNanos = System.nanoTime();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * 以JDK自带的default配置开始录制(包含GC等事件)，并打开本测试的所有事件
+	 *
+	 * @throws IOException
+	 * @throws ParseException
+	 */
+	@Override
+	protected void start() throws IOException, ParseException {
+		recording = new Recording(Configuration.getConfiguration("default"));
+		recording.setName("phoenix-test");
+		recording.setToDisk(true);
+		recording.setMaxSize(maxSize);
+		for (Class<? extends Event> type : TYPES) {
+			recording.enable(type).withoutThreshold();
+		}
+		recording.start();
+	}
+
+	/**
+	 * 停止录制，写入文件并输出汇总
+	 *
+	 * @throws IOException
+	 */
+	@Override
+	protected void stop() throws IOException {
+		recording.stop();
+		recording.dump(file);
+		recording.close();
+		System.out.println("Flight recording saved to: " + file.toAbsolutePath());
+	}
+
+	@Category("Phoenix Test")
+	abstract static class HarnessEvent extends Event implements Span {
+		@Label("Table")
+		String table;
+
+		@Label("Tenant")
+		String tenant;
+
+		@Label("Rows")
+		long rows;
+
+		@Label("Bytes")
+		@DataAmount
+		long bytes;
+
+		// transient 字段不写入录制，只用于进程内的汇总
+		transient HarnessRecording owner;
+		transient Stage stage;
+		transient long beginNanos;
+
+		/**
+		 * 结束计时，录制中则填充字段并提交
+		 */
+		@Override
+		public void end(String table, String tenant, long rows, long bytes) {
+			end();
+			owner.aggregate(stage, table, System.nanoTime() - beginNanos, rows, bytes);
+			if (shouldCommit()) {
+				this.table = table;
+				this.tenant = tenant;
+				this.rows = rows;
+				this.bytes = bytes;
+				commit();
+			}
+		}
+	}
+
+	@Name(PREFIX + "Generate")
+	@Label("Generate Row")
+	static class GenerateEvent extends HarnessEvent {
+	}
+
+	@Name(PREFIX + "QueuePut")
+	@Label("Queue Put")
+	static class QueuePutEvent extends HarnessEvent {
+	}
+
+	@Name(PREFIX + "QueueTake")
+	@Label("Queue Take")
+	static class QueueTakeEvent extends HarnessEvent {
+	}
+
+	@Name(PREFIX + "Upsert")
+	@Label("Upsert")
+	static class UpsertEvent extends HarnessEvent {
+	}
+
+	@Name(PREFIX + "Commit")
+	@Label("Commit")
+	static class CommitEvent extends HarnessEvent {
+	}
+}
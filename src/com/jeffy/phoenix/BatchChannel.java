@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jeffy.phoenix;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * @Author Jeffy
+ * @Email: renwu58@gmail.com
+ *
+ *         在一个生产者和一个消费者之间传递 RowBatch。空闲的批次放在 free 中循环使用，数据结束时由生产者调用
+ *         close()，消费者取完剩余批次后 take() 返回null，不需要在数据中放置结束标记。
+ *
+ */
+class BatchChannel {
+	private final RowBatch[] ring;
+	private int head;
+	private int count;
+	private boolean closed;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	private final Condition notFull = lock.newCondition();
+	private final ArrayBlockingQueue<RowBatch> free;
+
+	/**
+	 * @param batches
+	 *            同时存在的批次个数
+	 * @param batchRows
+	 *            每个批次的行数
+	 */
+	public BatchChannel(int batches, int batchRows) {
+		ring = new RowBatch[batches];
+		free = new ArrayBlockingQueue<>(batches);
+		for (int i = 0; i < batches; i++) {
+			free.add(new RowBatch(batchRows));
+		}
+	}
+
+	/**
+	 * 生产者获取一个空闲的批次，全部批次都在使用中时阻塞
+	 *
+	 * @return
+	 * @throws InterruptedException
+	 */
+	public RowBatch acquire() throws InterruptedException {
+		return free.take();
+	}
+
+	/**
+	 * 消费者用完批次后归还
+	 *
+	 * @param batch
+	 */
+	public void recycle(RowBatch batch) {
+		free.offer(batch);
+	}
+
+	public void put(RowBatch batch) throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			while (count == ring.length) {
+				notFull.await();
+			}
+			ring[(head + count) % ring.length] = batch;
+			count++;
+			notEmpty.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 取出一个批次，通道已关闭且没有剩余数据时返回null
+	 *
+	 * @return
+	 * @throws InterruptedException
+	 */
+	public RowBatch take() throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			while (count == 0) {
+				if (closed) {
+					return null;
+				}
+				notEmpty.await();
+			}
+			RowBatch batch = ring[head];
+			ring[head] = null;
+			head = (head + 1) % ring.length;
+			count--;
+			notFull.signal();
+			return batch;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 通知消费者数据已经产生完了
+	 */
+	public void close() {
+		lock.lock();
+		try {
+			closed = true;
+			notEmpty.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int size() {
+		lock.lock();
+		try {
+			return count;
+		} finally {
+			lock.unlock();
+		}
+	}
+}
@@ -0,0 +1,473 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jeffy.phoenix;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import com.jeffy.phoenix.HarnessTrace.Span;
+import com.jeffy.phoenix.HarnessTrace.Stage;
+
+/**
+ * 一个消费数据的类
+ */
+
+class ConsumeData {
+	private final static Logger logger = Logger.getLogger(ConsumeData.class);
+	// 保存队列数据
+	private ProduceTestData produce;
+	// 保存数据库连接的Map
+	private Map<Integer, Connection> linkMap;
+	private String tablePrefix = PhoenixTest.TABLE_PREFIX;
+	private String url;
+	private int batchSize = 5000;
+	// 按字节计数的内存预算，为空时每batchSize行提交一次
+	private MemoryBudget budget;
+	// soak模式下不输出提交进度
+	private boolean quiet = false;
+	// 已提交的行数
+	private final AtomicLong committedRows = new AtomicLong();
+	// 当前打开的数据库连接数
+	private final AtomicInteger openConnections = new AtomicInteger();
+	// 统计间隔内每次提交的耗时(毫秒)，只在 SoakMonitor 运行时记录，每个间隔由其取出清空
+	private volatile boolean intervalLatencies = false;
+	private final List<Long> commitLatencies = new ArrayList<>();
+	// 行键设计，决定建表的盐值和预分区
+	private KeyDesign keyDesign = new KeyDesign();
+	// 建表前先删除已有的表
+	private boolean recreateTables = false;
+	// 保存测试结果时按固定大小抽样记录提交耗时(微秒)，为空时不记录
+	private volatile LatencyReservoir commitSample;
+	// Phoenix JDBC驱动的版本
+	private String clientVersion = "unknown";
+
+	private int numberOfThreads;
+	public final static String PHOENIX_DRIVER = "org.apache.phoenix.jdbc.PhoenixDriver";
+	public final static String createTable = "create table if not exists #tb# (tenantid varchar not null,id bigint not null,name varchar, createts timestamp,  updatets timestamp, sessionid bigint, description varchar, constraint pk primary key (tenantid,id, name) )#options#";
+
+	public final static String dropTable = "drop table if exists #tb#";
+
+	public final static String upsertStatement = "upsert into #tb# (id ,name , createts ,  updatets , sessionid , description) values (?,?,?,?,?,?)";
+
+	public ConsumeData(ProduceTestData produce, int numberOfThreads, String url) {
+		this.produce = produce;
+		this.numberOfThreads = numberOfThreads / 2;
+		this.url = url;
+	}
+
+	public void setBudget(MemoryBudget budget) {
+		this.budget = budget;
+	}
+
+	public void setQuiet(boolean quiet) {
+		this.quiet = quiet;
+	}
+
+	public void setKeyDesign(KeyDesign keyDesign) {
+		this.keyDesign = keyDesign;
+	}
+
+	public void setRecreateTables(boolean recreateTables) {
+		this.recreateTables = recreateTables;
+	}
+
+	public void setIntervalLatencies(boolean intervalLatencies) {
+		this.intervalLatencies = intervalLatencies;
+	}
+
+	public void setCommitSample(LatencyReservoir commitSample) {
+		this.commitSample = commitSample;
+	}
+
+	public String getClientVersion() {
+		return clientVersion;
+	}
+
+	public long getCommittedRows() {
+		return committedRows.get();
+	}
+
+	public int getOpenConnections() {
+		return openConnections.get();
+	}
+
+	/**
+	 * 取出并清空统计间隔内的提交耗时
+	 * 
+	 * @return
+	 */
+	public List<Long> drainCommitLatencies() {
+		synchronized (commitLatencies) {
+			List<Long> latencies = new ArrayList<>(commitLatencies);
+			commitLatencies.clear();
+			return latencies;
+		}
+	}
+
+	private Connection openConnection(Properties props) throws SQLException {
+		Connection conn = DriverManager.getConnection(url, props);
+		openConnections.incrementAndGet();
+		return conn;
+	}
+
+	private void closeConnection(Connection conn) {
+		try {
+			conn.close();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		} finally {
+			openConnections.decrementAndGet();
+		}
+	}
+
+	/**
+	 * 准备数据库表
+	 * 
+	 * @throws SQLException
+	 * @throws ClassNotFoundException
+	 */
+	public void prepare() throws SQLException, ClassNotFoundException {
+		Class.forName(PHOENIX_DRIVER);
+		connect();
+	}
+
+	/**
+	 * 为每个表打开连接并建表，驱动需要已经注册
+	 * 
+	 * @throws SQLException
+	 */
+	void connect() throws SQLException {
+		linkMap = new ConcurrentHashMap<>();
+		for (int i = 0; i < numberOfThreads; i++) {
+			Properties pops = new Properties();
+			pops.put("TenantId", PhoenixTest.TENANT_PREFIX + i);
+			Connection conn = openConnection(pops);
+			linkMap.put(i, conn);
+			clientVersion = conn.getMetaData().getDriverVersion();
+			createTestTable(i);
+		}
+	}
+
+	/**
+	 * 创建测试的表
+	 * 
+	 * @param threadId
+	 * @param conn
+	 * @throws SQLException
+	 */
+	private void createTestTable(int threadId) throws SQLException {
+		Connection conn = openConnection(new Properties());
+		try {
+			String table = tablePrefix + threadId;
+			if (recreateTables) {
+				Statement drop = conn.createStatement();
+				String sql = dropTable.replace("#tb#", table);
+				logger.info("===>" + sql);
+				drop.executeUpdate(sql);
+				drop.close();
+			}
+			String sql = createTable.replace("#tb#", table).replace("#options#", keyDesign.tableOptions());
+			logger.info("===>" + sql);
+			// 预分区点是二进制的行键，只能通过绑定参数传入
+			PreparedStatement stmt = conn.prepareStatement(sql);
+			byte[][] splits = keyDesign.splitKeys(PhoenixTest.TENANT_PREFIX + threadId);
+			for (int i = 0; i < splits.length; i++) {
+				stmt.setBytes(i + 1, splits[i]);
+			}
+			stmt.executeUpdate();
+			conn.commit();
+			stmt.close();
+		} finally {
+			closeConnection(conn);
+		}
+	}
+
+	public Runnable createConsumer(final int id) {
+		return () -> {
+			ArrayBlockingQueue<Data> dataQueue = produce.getDataQueue(id);
+			Connection conn = linkMap.get(id);
+			String table = tablePrefix + id;
+			String tenant = PhoenixTest.TENANT_PREFIX + id;
+			PreparedStatement stmt = prepareUpsert(conn, table);
+			if (stmt == null) {
+				return;
+			}
+			int i = 0;
+			int commits = 0;
+			// 尚未提交的行数
+			int rows = 0;
+			// 尚未提交的字节数
+			long pending = 0L;
+			long commitBytes = budget == null ? 0L : budget.commitThreshold(numberOfThreads);
+			while (true) {
+				Data data;
+				Span take = HarnessTrace.begin(Stage.QUEUE_TAKE);
+				try {
+					data = dataQueue.take();
+					take.end(table, tenant, 1, data instanceof TestData ? ((TestData) data).size() : 0);
+				} catch (InterruptedException e1) {
+					e1.printStackTrace();
+					break;
+				}
+				i++;
+				// logger.info("========>"+data);
+				if (data instanceof TestData) {
+					TestData testData = (TestData) data;
+					long bytes = testData.size();
+					pending += bytes;
+					if (budget != null) {
+						budget.buffer(bytes);
+					}
+					try {
+						executeUpsertStatement(stmt, testData, table);
+					} catch (SQLException e) {
+						e.printStackTrace();
+						break;
+					}
+					rows++;
+					boolean flush = budget == null ? i % batchSize == 0 : pending >= commitBytes;
+					if (flush) {
+						boolean committed = commit(conn, table, tenant, rows, pending);
+						rows = 0;
+						pending = 0L;
+						if (!committed) {
+							break;
+						}
+						progress(id, ++commits, dataQueue.size());
+					}
+				} else if (data instanceof ControlData) {
+					break;
+				} else {
+					continue;
+				}
+			}
+			commit(conn, table, tenant, rows, pending);
+			try {
+				stmt.close();
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+			closeConnection(conn);
+		};
+	}
+
+	/**
+	 * 按列批量消费数据，每批数据绑定为一个JDBC批次执行，通道关闭且取完后结束
+	 * 
+	 * @param id
+	 * @return
+	 */
+	public Runnable createBatchConsumer(final int id) {
+		return () -> {
+			BatchChannel channel = produce.getBatchChannel(id);
+			Connection conn = linkMap.get(id);
+			String table = tablePrefix + id;
+			String tenant = PhoenixTest.TENANT_PREFIX + id;
+			PreparedStatement stmt = prepareUpsert(conn, table);
+			if (stmt == null) {
+				return;
+			}
+			int commits = 0;
+			// 尚未提交的行数
+			int rows = 0;
+			// 尚未提交的字节数
+			long pending = 0L;
+			long commitBytes = budget == null ? 0L : budget.commitThreshold(numberOfThreads);
+			while (true) {
+				RowBatch batch;
+				Span take = HarnessTrace.begin(Stage.QUEUE_TAKE);
+				try {
+					batch = channel.take();
+				} catch (InterruptedException e1) {
+					e1.printStackTrace();
+					break;
+				}
+				if (batch == null) {
+					break;
+				}
+				take.end(table, tenant, batch.rows, batch.bytes);
+				int n = batch.rows;
+				pending += batch.bytes;
+				if (budget != null) {
+					budget.buffer(batch.bytes);
+				}
+				try {
+					executeUpsertBatch(stmt, batch, table);
+				} catch (SQLException e) {
+					e.printStackTrace();
+					break;
+				} finally {
+					// 绑定时已经复制了数据，批次可以立即归还
+					channel.recycle(batch);
+				}
+				rows += n;
+				boolean flush = budget == null ? rows >= batchSize : pending >= commitBytes;
+				if (flush) {
+					boolean committed = commit(conn, table, tenant, rows, pending);
+					rows = 0;
+					pending = 0L;
+					if (!committed) {
+						break;
+					}
+					progress(id, ++commits, channel.size());
+				}
+			}
+			commit(conn, table, tenant, rows, pending);
+			try {
+				stmt.close();
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+			closeConnection(conn);
+		};
+	}
+
+	/**
+	 * 关闭自动提交并创建upsert语句，失败时关闭连接并返回null
+	 * 
+	 * @param conn
+	 * @param table
+	 * @return
+	 */
+	private PreparedStatement prepareUpsert(Connection conn, String table) {
+		try {
+			conn.setAutoCommit(false);
+		} catch (SQLException e) {// 如果数据库不支持事物，直接忽略错误
+			e.printStackTrace();
+		}
+		try {
+			return conn.prepareStatement(upsertStatement.replace("#tb#", table));
+		} catch (SQLException e1) {
+			e1.printStackTrace(); // 如果无法创建PrepareStatement则 输出错误退出
+			closeConnection(conn);
+			return null;
+		}
+	}
+
+	/**
+	 * 输出提交进度
+	 * 
+	 * @param id
+	 * @param commits
+	 * @param backlog
+	 *            队列中等待的数据
+	 */
+	private void progress(int id, int commits, int backlog) {
+		if (quiet) {
+			return;
+		}
+		System.out.print("+");
+		if (commits % 10 == 0) {
+			System.out.println(id + "=" + backlog);
+		}
+	}
+
+	/**
+	 * 提交并释放对应的内存预算
+	 *
+	 * @param conn
+	 * @param table
+	 * @param tenant
+	 * @param rows
+	 *            本次提交的行数
+	 * @param pending
+	 *            本次提交的字节数
+	 * @return
+	 */
+	private boolean commit(Connection conn, String table, String tenant, int rows, long pending) {
+		if (budget != null) {
+			budget.sampleHeap();
+		}
+		long begin = System.nanoTime();
+		Span span = HarnessTrace.begin(Stage.COMMIT);
+		try {
+			conn.commit();
+			span.end(table, tenant, rows, pending);
+			committedRows.addAndGet(rows);
+			long elapsed = System.nanoTime() - begin;
+			if (intervalLatencies) {
+				synchronized (commitLatencies) {
+					commitLatencies.add(TimeUnit.NANOSECONDS.toMillis(elapsed));
+				}
+			}
+			LatencyReservoir sample = commitSample;
+			if (sample != null) {
+				sample.add(TimeUnit.NANOSECONDS.toMicros(elapsed));
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+			return false;
+		} finally {
+			if (budget != null) {
+				budget.release(pending);
+			}
+		}
+		return true;
+	}
+
+	private void executeUpsertStatement(PreparedStatement stmt, TestData data, String table) throws SQLException {
+		Span span = HarnessTrace.begin(Stage.UPSERT);
+		TestData testData = (TestData) data;
+		stmt.setLong(1, testData.getId());
+		stmt.setString(2, testData.getName());
+		stmt.setTimestamp(3, new Timestamp(testData.getCreateDate().getTime()));
+		stmt.setTimestamp(4, new Timestamp(testData.getUpdateDate().getTime()));
+		stmt.setLong(5, testData.getSessionId());
+		stmt.setString(6, testData.getDescription());
+		stmt.executeUpdate();
+		span.end(table, testData.getTenantId(), 1, testData.size());
+	}
+
+	/**
+	 * 直接从列中读取数据绑定到JDBC批次
+	 * 
+	 * @param stmt
+	 * @param batch
+	 * @param table
+	 * @throws SQLException
+	 */
+	private void executeUpsertBatch(PreparedStatement stmt, RowBatch batch, String table) throws SQLException {
+		Span span = HarnessTrace.begin(Stage.UPSERT);
+		for (int r = 0; r < batch.rows; r++) {
+			stmt.setLong(1, batch.ids[r]);
+			stmt.setString(2, batch.name(r));
+			stmt.setTimestamp(3, new Timestamp(batch.createTs[r]));
+			stmt.setTimestamp(4, new Timestamp(batch.updateTs[r]));
+			stmt.setLong(5, batch.sessionIds[r]);
+			stmt.setString(6, batch.description(r));
+			stmt.addBatch();
+		}
+		stmt.executeBatch();
+		span.end(table, batch.tenant, batch.rows, batch.bytes);
+	}
+
+}
@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jeffy.phoenix;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+/**
+ * @Author Jeffy
+ * @Email: renwu58@gmail.com
+ *
+ *         比较逐行传递TestData对象和按列批量传递两种方式的吞吐。使用一个什么也不做的JDBC驱动，
+ *         测出的是生成、传递和绑定数据本身的开销，不需要Phoenix集群。
+ *
+ */
+public class HandoffBenchmark {
+
+	private static final int ROUNDS = 5;
+
+	/**
+	 * 参数： 每个表的行数[默认100W] 线程数[默认与CPU核心数一致，至少为2] 每批的行数[默认1000]
+	 */
+	public static void main(String[] args) throws Exception {
+		int numberOfRows = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int numberOfThreads = args.length > 1 ? Integer.parseInt(args[1])
+				: Math.max(2, Runtime.getRuntime().availableProcessors());
+		int batchRows = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+		DriverManager.registerDriver(new NoopDriver());
+
+		System.out.println("================Hand-off benchmark=====================");
+		System.out.println("Rows in each table: " + numberOfRows);
+		System.out.println("Number of threads: " + numberOfThreads);
+		System.out.println("Columnar batch rows: " + batchRows);
+		// 第一轮作为预热，不计入结果
+		double rowBest = 0;
+		double batchBest = 0;
+		for (int round = 0; round <= ROUNDS; round++) {
+			double row = run(numberOfThreads, numberOfRows, 0);
+			double batch = run(numberOfThreads, numberOfRows, batchRows);
+			System.out.println(String.format("%s %d: per-object %.0f rows/second, columnar %.0f rows/second",
+					round == 0 ? "Warm-up" : "Round", round, row, batch));
+			if (round > 0) {
+				rowBest = Math.max(rowBest, row);
+				batchBest = Math.max(batchBest, batch);
+			}
+		}
+		System.out.println("=======================================================");
+		System.out.println(String.format("Best per-object: %.0f rows/second", rowBest));
+		System.out.println(String.format("Best columnar:   %.0f rows/second", batchBest));
+		System.out.println(String.format("Gain: %.2fx", batchBest / rowBest));
+	}
+
+	/**
+	 * 运行一次测试
+	 *
+	 * @param numberOfThreads
+	 * @param numberOfRows
+	 * @param batchRows
+	 *            0表示逐行传递
+	 * @return 吞吐(行/秒)
+	 */
+	private static double run(int numberOfThreads, int numberOfRows, int batchRows) throws Exception {
+		ProduceTestData produce = new ProduceTestData(numberOfThreads, numberOfRows);
+		ConsumeData consumer = new ConsumeData(produce, numberOfThreads, NoopDriver.URL);
+		consumer.setQuiet(true);
+		if (batchRows > 0) {
+			produce.enableBatches(batchRows);
+		}
+		consumer.connect();
+		ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+		List<Future<?>> futures = new ArrayList<>();
+		long begin = System.nanoTime();
+		for (int i = 0; i < numberOfThreads / 2; i++) {
+			if (batchRows > 0) {
+				futures.add(executor.submit(produce.createBatchProducer(i)));
+				futures.add(executor.submit(consumer.createBatchConsumer(i)));
+			} else {
+				futures.add(executor.submit(produce.createProducer(i)));
+				futures.add(executor.submit(consumer.createConsumer(i)));
+			}
+		}
+		for (Future<?> future : futures) {
+			future.get();
+		}
+		long elapsed = System.nanoTime() - begin;
+		executor.shutdown();
+		return consumer.getCommittedRows() * 1e9 / elapsed;
+	}
+}
+
+/**
+ * 接受 jdbc:noop: 的JDBC驱动，所有方法都直接返回，返回接口类型时返回同样的空实现
+ */
+class NoopDriver implements Driver {
+	public static final String URL = "jdbc:noop:";
+
+	private static final InvocationHandler HANDLER = new InvocationHandler() {
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			Class<?> type = method.getReturnType();
+			if (type == int[].class) {
+				return new int[0];
+			} else if (type == String.class) {
+				return "noop";
+			} else if (type == boolean.class) {
+				return Boolean.FALSE;
+			} else if (type == int.class) {
+				return 0;
+			} else if (type == long.class) {
+				return 0L;
+			} else if (type.isInterface()) {
+				return noop(type);
+			}
+			return null;
+		}
+	};
+
+	static Object noop(Class<?> type) {
+		return Proxy.newProxyInstance(NoopDriver.class.getClassLoader(), new Class<?>[] { type }, HANDLER);
+	}
+
+	@Override
+	public Connection connect(String url, Properties info) throws SQLException {
+		return acceptsURL(url) ? (Connection) noop(Connection.class) : null;
+	}
+
+	@Override
+	public boolean acceptsURL(String url) {
+		return url != null && url.startsWith(URL);
+	}
+
+	@Override
+	public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+		return new DriverPropertyInfo[0];
+	}
+
+	@Override
+	public int getMajorVersion() {
+		return 0;
+	}
+
+	@Override
+	public int getMinorVersion() {
+		return 0;
+	}
+
+	@Override
+	public boolean jdbcCompliant() {
+		return false;
+	}
+
+	@Override
+	public Logger getParentLogger() {
+		return Logger.getLogger(NoopDriver.class.getName());
+	}
+}
@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jeffy.phoenix;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @Author Jeffy
+ * @Email: renwu58@gmail.com
+ *
+ *         测试各阶段(生成数据、队列等待、绑定执行、提交)的计时。
+ *
+ *         未录制时 begin() 返回同一个空实现，不分配对象。指定 --jfr 时才按类名加载 src-jfr 中基于JFR事件的
+ *         HarnessRecording，其他代码不引用 jdk.jfr 的类，因此在没有JFR的JDK上也可以编译(--release 8)和运行。
+ *
+ */
+abstract class HarnessTrace {
+	// JFR实现的类名，位于 src-jfr 目录，需要 JDK 8u262 及以上或 JDK 11+ 编译
+	private static final String RECORDING_CLASS = "com.jeffy.phoenix.HarnessRecording";
+
+	/**
+	 * 计时的阶段
+	 */
+	enum Stage {
+		GENERATE("Generate"), QUEUE_PUT("QueuePut"), QUEUE_TAKE("QueueTake"), UPSERT("Upsert"), COMMIT("Commit");
+
+		final String label;
+
+		Stage(String label) {
+			this.label = label;
+		}
+	}
+
+	/**
+	 * 一个阶段在一个表上的累计值
+	 */
+	static class StageStats {
+		long count;
+		long totalNanos;
+		long maxNanos;
+		long rows;
+		long bytes;
+
+		synchronized void add(long nanos, long rows, long bytes) {
+			count++;
+			totalNanos += nanos;
+			maxNanos = Math.max(maxNanos, nanos);
+			this.rows += rows;
+			this.bytes += bytes;
+		}
+	}
+
+	/**
+	 * 一次计时，由 begin() 开始
+	 */
+	interface Span {
+		/**
+		 * 结束计时，录制中则记录
+		 */
+		void end(String table, String tenant, long rows, long bytes);
+	}
+
+	private static final Span NOOP = (table, tenant, rows, bytes) -> {
+	};
+
+	// 正在进行的录制，同一时间只有一个
+	private static volatile HarnessTrace current;
+
+	// 整个测试期间每个阶段、每个表的累计耗时。录制文件有大小限制，长时间运行时只保留最后一段，汇总以这里为准
+	private final Map<Stage, ConcurrentHashMap<String, StageStats>> stats = new EnumMap<>(Stage.class);
+
+	protected HarnessTrace() {
+		for (Stage stage : Stage.values()) {
+			stats.put(stage, new ConcurrentHashMap<String, StageStats>());
+		}
+	}
+
+	/**
+	 * 开始一个阶段的计时
+	 *
+	 * @param stage
+	 * @return
+	 */
+	static Span begin(Stage stage) {
+		HarnessTrace trace = current;
+		return trace == null ? NOOP : trace.span(stage);
+	}
+
+	/**
+	 * 加载JFR实现并开始录制
+	 *
+	 * @param file
+	 *            录制文件
+	 * @param maxSize
+	 *            录制保留的最大字节数，超过后丢弃最早的数据
+	 * @return
+	 * @throws Exception
+	 *             当前JVM不支持JFR或无法开始录制
+	 */
+	static HarnessTrace record(String file, long maxSize) throws Exception {
+		HarnessTrace trace;
+		try {
+			trace = (HarnessTrace) Class.forName(RECORDING_CLASS).getConstructor(String.class, long.class)
+					.newInstance(file, maxSize);
+		} catch (ClassNotFoundException | LinkageError e) {
+			throw new UnsupportedOperationException(
+					"Java Flight Recorder is not available, it needs JDK 8u262+ or JDK 11+ and the classes in src-jfr", e);
+		}
+		trace.start();
+		current = trace;
+		return trace;
+	}
+
+	/**
+	 * 结束录制并输出整个测试期间的汇总
+	 *
+	 * @throws IOException
+	 */
+	void finish() throws IOException {
+		current = null;
+		stop();
+		summarize();
+	}
+
+	/**
+	 * 累计一次计时，由 Span 结束时调用。同一阶段、同一表通常只有一个线程更新
+	 *
+	 * @param stage
+	 * @param table
+	 * @param nanos
+	 * @param rows
+	 * @param bytes
+	 */
+	protected void aggregate(Stage stage, String table, long nanos, long rows, long bytes) {
+		ConcurrentHashMap<String, StageStats> byTable = stats.get(stage);
+		StageStats s = byTable.get(table);
+		if (s == null) {
+			s = byTable.computeIfAbsent(table, t -> new StageStats());
+		}
+		s.add(nanos, rows, bytes);
+	}
+
+	/**
+	 * 按阶段和表输出整个测试期间的累计耗时，按总耗时从大到小排列
+	 */
+	void summarize() {
+		Map<String, StageStats> rows = new LinkedHashMap<>();
+		for (Map.Entry<Stage, ConcurrentHashMap<String, StageStats>> stage : stats.entrySet()) {
+			for (Map.Entry<String, StageStats> table : stage.getValue().entrySet()) {
+				rows.put(stage.getKey().label + " " + table.getKey(), table.getValue());
+			}
+		}
+		List<Map.Entry<String, StageStats>> entries = new ArrayList<>(rows.entrySet());
+		entries.sort((a, b) -> Long.compare(b.getValue().totalNanos, a.getValue().totalNanos));
+		System.out.println("================Harness stages (whole run)=============");
+		System.out.println(String.format("%-24s %10s %12s %10s %10s %12s %14s", "stage", "count", "total(ms)",
+				"avg(us)", "max(ms)", "rows", "bytes"));
+		for (Map.Entry<String, StageStats> entry : entries) {
+			StageStats s = entry.getValue();
+			synchronized (s) {
+				System.out.println(String.format("%-24s %10d %12d %10d %10d %12d %14d", entry.getKey(), s.count,
+						s.totalNanos / 1000000, s.totalNanos / 1000 / Math.max(1, s.count), s.maxNanos / 1000000,
+						s.rows, s.bytes));
+			}
+		}
+		System.out.println("=======================================================");
+	}
+
+	protected abstract Span span(Stage stage);
+
+	protected abstract void start() throws Exception;
+
+	protected abstract void stop() throws IOException;
+}
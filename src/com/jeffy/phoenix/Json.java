@@ -0,0 +1,291 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jeffy.phoenix;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @Author Jeffy
+ * @Email: renwu58@gmail.com
+ *
+ *         一个最简单的JSON读写工具，只用于保存和读取测试结果，避免依赖Phoenix客户端包里的第三方库。
+ *
+ *         对象读取为 LinkedHashMap，数组读取为 ArrayList，数字统一读取为 Double。
+ *
+ */
+class Json {
+
+	private final String text;
+	private int pos;
+
+	private Json(String text) {
+		this.text = text;
+	}
+
+	/**
+	 * 把Map/Collection/String/Number/Boolean/null 输出为带缩进的JSON
+	 *
+	 * @param value
+	 * @return
+	 */
+	public static String write(Object value) {
+		StringBuilder sb = new StringBuilder();
+		write(sb, value, "");
+		return sb.toString();
+	}
+
+	private static void write(StringBuilder sb, Object value, String indent) {
+		if (value == null) {
+			sb.append("null");
+		} else if (value instanceof String) {
+			quote(sb, (String) value);
+		} else if (value instanceof Number || value instanceof Boolean) {
+			sb.append(value);
+		} else if (value instanceof Map) {
+			Map<?, ?> map = (Map<?, ?>) value;
+			if (map.isEmpty()) {
+				sb.append("{}");
+				return;
+			}
+			String inner = indent + "  ";
+			sb.append("{\n");
+			boolean first = true;
+			for (Map.Entry<?, ?> entry : map.entrySet()) {
+				if (!first) {
+					sb.append(",\n");
+				}
+				first = false;
+				sb.append(inner);
+				quote(sb, String.valueOf(entry.getKey()));
+				sb.append(": ");
+				write(sb, entry.getValue(), inner);
+			}
+			sb.append('\n').append(indent).append('}');
+		} else if (value instanceof Collection) {
+			// 数组写在一行，样本数据可能很多
+			sb.append('[');
+			boolean first = true;
+			for (Object item : (Collection<?>) value) {
+				if (!first) {
+					sb.append(", ");
+				}
+				first = false;
+				write(sb, item, indent);
+			}
+			sb.append(']');
+		} else {
+			quote(sb, value.toString());
+		}
+	}
+
+	private static void quote(StringBuilder sb, String s) {
+		sb.append('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '"':
+				sb.append("\\\"");
+				break;
+			case '\\':
+				sb.append("\\\\");
+				break;
+			case '\n':
+				sb.append("\\n");
+				break;
+			case '\r':
+				sb.append("\\r");
+				break;
+			case '\t':
+				sb.append("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					sb.append(String.format("\\u%04x", (int) c));
+				} else {
+					sb.append(c);
+				}
+			}
+		}
+		sb.append('"');
+	}
+
+	/**
+	 * 解析JSON文本
+	 *
+	 * @param text
+	 * @return
+	 */
+	public static Object parse(String text) {
+		Json parser = new Json(text);
+		Object value = parser.readValue();
+		parser.skipWhitespace();
+		if (parser.pos != text.length()) {
+			throw parser.error("Unexpected trailing content");
+		}
+		return value;
+	}
+
+	private Object readValue() {
+		skipWhitespace();
+		if (pos >= text.length()) {
+			throw error("Unexpected end of input");
+		}
+		char c = text.charAt(pos);
+		if (c == '{') {
+			return readObject();
+		} else if (c == '[') {
+			return readArray();
+		} else if (c == '"') {
+			return readString();
+		} else if (text.startsWith("true", pos)) {
+			pos += 4;
+			return Boolean.TRUE;
+		} else if (text.startsWith("false", pos)) {
+			pos += 5;
+			return Boolean.FALSE;
+		} else if (text.startsWith("null", pos)) {
+			pos += 4;
+			return null;
+		}
+		return readNumber();
+	}
+
+	private Map<String, Object> readObject() {
+		Map<String, Object> map = new LinkedHashMap<>();
+		pos++;
+		skipWhitespace();
+		if (peek() == '}') {
+			pos++;
+			return map;
+		}
+		while (true) {
+			skipWhitespace();
+			String key = readString();
+			skipWhitespace();
+			expect(':');
+			map.put(key, readValue());
+			skipWhitespace();
+			if (peek() == ',') {
+				pos++;
+			} else {
+				expect('}');
+				return map;
+			}
+		}
+	}
+
+	private List<Object> readArray() {
+		List<Object> list = new ArrayList<>();
+		pos++;
+		skipWhitespace();
+		if (peek() == ']') {
+			pos++;
+			return list;
+		}
+		while (true) {
+			list.add(readValue());
+			skipWhitespace();
+			if (peek() == ',') {
+				pos++;
+			} else {
+				expect(']');
+				return list;
+			}
+		}
+	}
+
+	private String readString() {
+		expect('"');
+		StringBuilder sb = new StringBuilder();
+		while (true) {
+			if (pos >= text.length()) {
+				throw error("Unterminated string");
+			}
+			char c = text.charAt(pos++);
+			if (c == '"') {
+				return sb.toString();
+			}
+			if (c != '\\') {
+				sb.append(c);
+				continue;
+			}
+			char e = text.charAt(pos++);
+			switch (e) {
+			case 'n':
+				sb.append('\n');
+				break;
+			case 'r':
+				sb.append('\r');
+				break;
+			case 't':
+				sb.append('\t');
+				break;
+			case 'b':
+				sb.append('\b');
+				break;
+			case 'f':
+				sb.append('\f');
+				break;
+			case 'u':
+				sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+				pos += 4;
+				break;
+			default:
+				sb.append(e);
+			}
+		}
+	}
+
+	private Double readNumber() {
+		int start = pos;
+		while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0) {
+			pos++;
+		}
+		if (start == pos) {
+			throw error("Unexpected character '" + text.charAt(pos) + "'");
+		}
+		return Double.valueOf(text.substring(start, pos));
+	}
+
+	private char peek() {
+		if (pos >= text.length()) {
+			throw error("Unexpected end of input");
+		}
+		return text.charAt(pos);
+	}
+
+	private void expect(char c) {
+		if (peek() != c) {
+			throw error("Expected '" + c + "'");
+		}
+		pos++;
+	}
+
+	private void skipWhitespace() {
+		while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+			pos++;
+		}
+	}
+
+	private IllegalArgumentException error(String message) {
+		return new IllegalArgumentException(message + " at position " + pos);
+	}
+}
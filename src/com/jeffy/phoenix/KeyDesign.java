@@ -0,0 +1,250 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jeffy.phoenix;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * @Author Jeffy
+ * @Email: renwu58@gmail.com
+ *
+ *         行键设计: 盐值桶数、id的生成方式和预分区点。
+ *
+ *         默认值(SALT_BUCKETS=3、顺序id、不预分区)与原来固定的建表语句一致。写入的桶(或预分区的region)在客户端
+ *         按Phoenix的规则根据生成的行键计算，不需要访问HBase。
+ *
+ */
+class KeyDesign {
+
+	/**
+	 * id的生成方式
+	 */
+	enum IdOrder {
+		// 单调递增，原来的方式
+		SEQUENTIAL,
+		// 按位反转，仍然唯一，但相邻序号落在key空间的不同位置
+		REVERSED,
+		// 对序号做64位混合哈希
+		HASHED,
+		// 随机id
+		RANDOM
+	}
+
+	private int saltBuckets = 3;
+	private IdOrder idOrder = IdOrder.SEQUENTIAL;
+	// 预分区的region数，0表示不预分区
+	private int splitPoints = 0;
+	// 顺序id的取值范围，用于计算预分区点
+	private long idRange = Long.MAX_VALUE;
+
+	public KeyDesign() {
+	}
+
+	public KeyDesign(int saltBuckets, IdOrder idOrder, int splitPoints) {
+		if (saltBuckets > 0 && splitPoints > 1) {
+			throw new IllegalArgumentException("Phoenix does not allow SPLIT ON for salted tables, use --salt-buckets=0");
+		}
+		if (saltBuckets < 0 || saltBuckets > 256) {
+			throw new IllegalArgumentException("Salt buckets must be between 0 and 256: " + saltBuckets);
+		}
+		this.saltBuckets = saltBuckets;
+		this.idOrder = idOrder;
+		this.splitPoints = splitPoints;
+	}
+
+	/**
+	 * 根据序号生成id
+	 *
+	 * @param seqno
+	 * @return
+	 */
+	public long toId(long seqno) {
+		switch (idOrder) {
+		case REVERSED:
+			// 序号非负，最高位为0，反转后右移一位仍然一一对应
+			return Long.reverse(seqno) >>> 1;
+		case HASHED:
+			return mix(seqno) & Long.MAX_VALUE;
+		case RANDOM:
+			return ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE;
+		default:
+			return seqno;
+		}
+	}
+
+	/**
+	 * MurmurHash3 的 fmix64
+	 */
+	private static long mix(long k) {
+		k ^= k >>> 33;
+		k *= 0xff51afd7ed558ccdL;
+		k ^= k >>> 33;
+		k *= 0xc4ceb9fe1a85ec53L;
+		k ^= k >>> 33;
+		return k;
+	}
+
+	/**
+	 * 建表语句的表选项，预分区时带有 SPLIT ON 的绑定参数
+	 *
+	 * @return
+	 */
+	public String tableOptions() {
+		StringBuilder sb = new StringBuilder();
+		if (saltBuckets > 0) {
+			sb.append("SALT_BUCKETS=").append(saltBuckets).append(',');
+		}
+		sb.append("MULTI_TENANT=true");
+		if (splitPoints > 1) {
+			sb.append(" SPLIT ON (");
+			for (int i = 1; i < splitPoints; i++) {
+				sb.append(i > 1 ? ",?" : "?");
+			}
+			sb.append(')');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * 预分区点对应的id，升序
+	 *
+	 * @return
+	 */
+	public long[] splitIds() {
+		if (splitPoints <= 1) {
+			return new long[0];
+		}
+		long range = idOrder == IdOrder.SEQUENTIAL ? idRange : Long.MAX_VALUE;
+		long[] ids = new long[splitPoints - 1];
+		for (int i = 1; i < splitPoints; i++) {
+			ids[i - 1] = (long) ((double) range / splitPoints * i);
+		}
+		return ids;
+	}
+
+	/**
+	 * 预分区点对应的行键: tenantid + 分隔符 + id，多租户表的行键以租户ID开头
+	 *
+	 * @param tenant
+	 * @return
+	 */
+	public byte[][] splitKeys(String tenant) {
+		long[] ids = splitIds();
+		byte[][] keys = new byte[ids.length][];
+		byte[] prefix = tenant.getBytes(StandardCharsets.UTF_8);
+		for (int i = 0; i < ids.length; i++) {
+			byte[] key = new byte[prefix.length + 1 + 8];
+			System.arraycopy(prefix, 0, key, 0, prefix.length);
+			putLong(key, prefix.length + 1, ids[i]);
+			keys[i] = key;
+		}
+		return keys;
+	}
+
+	/**
+	 * 桶的个数: 加盐时为盐值桶数，预分区时为region数，否则为1
+	 *
+	 * @return
+	 */
+	public int buckets() {
+		if (saltBuckets > 0) {
+			return saltBuckets;
+		}
+		return Math.max(1, splitPoints);
+	}
+
+	/**
+	 * 计算一行数据写入的桶。加盐时与Phoenix SaltingUtil 相同: 对不含盐值的行键做 31*h+b 哈希后对桶数取模；
+	 * 预分区时按id在分区点中的位置计算。
+	 *
+	 * @param tenant
+	 * @param id
+	 * @param name
+	 * @param splitIds
+	 *            splitIds() 的结果，由调用方缓存
+	 * @return
+	 */
+	public int bucketOf(String tenant, long id, CharSequence name, long[] splitIds) {
+		if (saltBuckets > 0) {
+			int h = 1;
+			for (int i = 0; i < tenant.length(); i++) {
+				h = hashUtf8(h, tenant.charAt(i));
+			}
+			h = 31 * h; // 分隔符 0
+			long v = id ^ Long.MIN_VALUE;
+			for (int shift = 56; shift >= 0; shift -= 8) {
+				h = 31 * h + (byte) (v >>> shift);
+			}
+			for (int i = 0; i < name.length(); i++) {
+				h = hashUtf8(h, name.charAt(i));
+			}
+			return Math.abs(h % saltBuckets);
+		}
+		if (splitIds.length > 0) {
+			int idx = Arrays.binarySearch(splitIds, id);
+			return idx >= 0 ? idx + 1 : -idx - 1;
+		}
+		return 0;
+	}
+
+	/**
+	 * 测试数据只包含ASCII字符，其他字符按UTF-8字节参与哈希
+	 */
+	private static int hashUtf8(int h, char c) {
+		if (c < 0x80) {
+			return 31 * h + (byte) c;
+		}
+		for (byte b : String.valueOf(c).getBytes(StandardCharsets.UTF_8)) {
+			h = 31 * h + b;
+		}
+		return h;
+	}
+
+	/**
+	 * Phoenix BIGINT 的编码: 翻转符号位后按大端写入
+	 */
+	private static void putLong(byte[] buf, int offset, long value) {
+		long v = value ^ Long.MIN_VALUE;
+		for (int i = 7; i >= 0; i--) {
+			buf[offset + i] = (byte) v;
+			v >>>= 8;
+		}
+	}
+
+	public int getSaltBuckets() {
+		return saltBuckets;
+	}
+
+	public IdOrder getIdOrder() {
+		return idOrder;
+	}
+
+	public int getSplitPoints() {
+		return splitPoints;
+	}
+
+	public void setIdRange(long idRange) {
+		this.idRange = idRange;
+	}
+
+	@Override
+	public String toString() {
+		return "salt=" + saltBuckets + ",order=" + idOrder.name().toLowerCase() + ",splits=" + splitPoints;
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jeffy.phoenix;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @Author Jeffy
+ * @Email: renwu58@gmail.com
+ *
+ *         按不同的行键设计依次运行同样的测试，最后输出吞吐与写入分布的对比
+ *
+ */
+class KeyDesignExperiment {
+
+	private final List<String> params;
+	private final Map<String, String> options;
+
+	public KeyDesignExperiment(List<String> params, Map<String, String> options) {
+		this.params = params;
+		this.options = options;
+	}
+
+	/**
+	 * 是否指定了任何行键设计参数
+	 *
+	 * @param options
+	 * @return
+	 */
+	public static boolean requested(Map<String, String> options) {
+		return options.containsKey("salt-buckets") || options.containsKey("id-order")
+				|| options.containsKey("split-points");
+	}
+
+	public void run() {
+		// 参数写错时直接报错，不当作无效的组合跳过
+		int[] salts = parseInts("salt-buckets", options.getOrDefault("salt-buckets", "3"));
+		KeyDesign.IdOrder[] orders = parseOrders(options.getOrDefault("id-order", "sequential"));
+		int[] splitPoints = parseInts("split-points", options.getOrDefault("split-points", "0"));
+		// 只指定了一种设计时，无效的设计直接报错；多种组合时跳过无效的组合(例如加盐的表不能预分区)
+		boolean single = salts.length * orders.length * splitPoints.length == 1;
+		PhoenixTest settings = PhoenixTest.create(params, options);
+		List<KeyDesign> designs = new ArrayList<>();
+		for (int salt : salts) {
+			for (KeyDesign.IdOrder order : orders) {
+				for (int splits : splitPoints) {
+					try {
+						KeyDesign design = new KeyDesign(salt, order, splits);
+						settings.idRange(design);
+						designs.add(design);
+					} catch (IllegalArgumentException e) {
+						if (single) {
+							throw e;
+						}
+						System.out.println("=====> Skip key design salt=" + salt + ",order="
+								+ order.name().toLowerCase() + ",splits=" + splits + ": " + e.getMessage());
+					}
+				}
+			}
+		}
+		List<String> lines = new ArrayList<>();
+		for (KeyDesign design : designs) {
+			System.out.println("=====> Key design: " + design);
+			PhoenixTest test = PhoenixTest.create(params, options);
+			test.setKeyDesign(design);
+			// 盐值和分区点在建表时确定，每种设计都重新建表
+			test.setRecreateTables(true);
+			// 每种设计单独保存结果和录制文件
+			if (test.getResultFile() != null) {
+				test.setResultFile(suffixed(test.getResultFile(), design));
+			}
+			if (test.getRecordingFile() != null) {
+				test.setRecordingFile(suffixed(test.getRecordingFile(), design));
+			}
+			test.start();
+			KeyDistribution distribution = test.getKeyDistribution();
+			lines.add(String.format("%-40s %12.0f %8.2f %10.2f  %s", design, test.getRowsPerSecond(),
+					distribution.skew(), distribution.hotWindowShare(), Arrays.toString(distribution.totals())));
+		}
+		System.out.println("================Key design comparison==================");
+		System.out.println(String.format("%-40s %12s %8s %10s  %s", "design", "rows/second", "skew", "hot-share",
+				"rows per bucket"));
+		lines.forEach(System.out::println);
+		System.out.println("=======================================================");
+	}
+
+	/**
+	 * 在文件扩展名之前加上行键设计，例如 result.json -> result-salt-3_order-sequential_splits-0.json
+	 */
+	private static String suffixed(String file, KeyDesign design) {
+		String suffix = "-" + design.toString().replace('=', '-').replace(',', '_');
+		int dot = file.lastIndexOf('.');
+		if (dot <= file.lastIndexOf('/') || dot <= file.lastIndexOf('\\')) {
+			return file + suffix;
+		}
+		return file.substring(0, dot) + suffix + file.substring(dot);
+	}
+
+	private static String[] split(String value) {
+		return value.trim().split("\\s*,\\s*");
+	}
+
+	private static int[] parseInts(String name, String value) {
+		String[] items = split(value);
+		int[] result = new int[items.length];
+		for (int i = 0; i < items.length; i++) {
+			try {
+				result[i] = Integer.parseInt(items[i]);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid --" + name + " value: " + items[i], e);
+			}
+		}
+		return result;
+	}
+
+	private static KeyDesign.IdOrder[] parseOrders(String value) {
+		String[] items = split(value);
+		KeyDesign.IdOrder[] result = new KeyDesign.IdOrder[items.length];
+		for (int i = 0; i < items.length; i++) {
+			result[i] = KeyDesign.IdOrder.valueOf(items[i].toUpperCase());
+		}
+		return result;
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jeffy.phoenix;
+
+import java.util.Arrays;
+
+/**
+ * @Author Jeffy
+ * @Email: renwu58@gmail.com
+ *
+ *         客户端统计的每个表写入各个桶的行数。每个表只由对应的生产者线程更新。
+ *
+ */
+class KeyDistribution {
+	// 统计热点的窗口大小，与默认的提交批次一致
+	static final int WINDOW = 5000;
+
+	private final KeyDesign design;
+	private final long[] splitIds;
+	private final long[][] counts;
+	private final int[][] windowCounts;
+	private final int[] windowRows;
+	// 每个窗口内最热的桶所占比例之和，以及窗口个数
+	private final double[] hotShareSum;
+	private final long[] windows;
+
+	public KeyDistribution(KeyDesign design, int numberOfTables) {
+		this.design = design;
+		this.splitIds = design.splitIds();
+		int buckets = design.buckets();
+		counts = new long[numberOfTables][buckets];
+		windowCounts = new int[numberOfTables][buckets];
+		windowRows = new int[numberOfTables];
+		hotShareSum = new double[numberOfTables];
+		windows = new long[numberOfTables];
+	}
+
+	public void record(int table, TestData data) {
+		record(table, data.getTenantId(), data.getId(), data.getName());
+	}
+
+	public void record(int table, String tenant, long id, CharSequence name) {
+		int bucket = design.bucketOf(tenant, id, name, splitIds);
+		counts[table][bucket]++;
+		windowCounts[table][bucket]++;
+		if (++windowRows[table] == WINDOW) {
+			closeWindow(table);
+		}
+	}
+
+	private void closeWindow(int table) {
+		int max = 0;
+		for (int c : windowCounts[table]) {
+			max = Math.max(max, c);
+		}
+		hotShareSum[table] += (double) max / windowRows[table];
+		windows[table]++;
+		Arrays.fill(windowCounts[table], 0);
+		windowRows[table] = 0;
+	}
+
+	/**
+	 * 汇总所有表，只在生产者结束之后调用
+	 *
+	 * @return
+	 */
+	public long[] totals() {
+		long[] totals = new long[design.buckets()];
+		for (long[] table : counts) {
+			for (int b = 0; b < table.length; b++) {
+				totals[b] += table[b];
+			}
+		}
+		return totals;
+	}
+
+	/**
+	 * 最多的桶与平均值之比，1表示完全均匀
+	 *
+	 * @return
+	 */
+	public double skew() {
+		long[] totals = totals();
+		long max = 0;
+		long sum = 0;
+		for (long t : totals) {
+			max = Math.max(max, t);
+			sum += t;
+		}
+		return sum == 0 ? 0 : max / ((double) sum / totals.length);
+	}
+
+	/**
+	 * 每 WINDOW 行中最热的桶平均承担的比例。单调递增的id即使总量均匀，同一时刻也集中写一个region，这里能体现出来。
+	 *
+	 * @return
+	 */
+	public double hotWindowShare() {
+		double sum = 0;
+		long count = 0;
+		for (int t = 0; t < windows.length; t++) {
+			if (windowRows[t] > 0) {
+				closeWindow(t);
+			}
+			sum += hotShareSum[t];
+			count += windows[t];
+		}
+		return count == 0 ? 0 : sum / count;
+	}
+}
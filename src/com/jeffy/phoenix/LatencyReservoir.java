@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jeffy.phoenix;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * @Author Jeffy
+ * @Email: renwu58@gmail.com
+ *
+ *         固定大小的提交耗时样本(蓄水池抽样，Algorithm R)。不论运行多久，内存和结果文件的大小都不超过 capacity 个值，
+ *         每次提交被保留的概率相同，样本可以代表整个测试期间的分布。总次数和最大值单独精确记录。
+ *
+ */
+class LatencyReservoir {
+	public static final int DEFAULT_CAPACITY = 10000;
+
+	private final long[] samples;
+	private int size;
+	// 记录过的总次数
+	private long count;
+	private long max;
+
+	public LatencyReservoir() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public LatencyReservoir(int capacity) {
+		samples = new long[capacity];
+	}
+
+	public synchronized void add(long value) {
+		count++;
+		max = Math.max(max, value);
+		if (size < samples.length) {
+			samples[size++] = value;
+			return;
+		}
+		long slot = ThreadLocalRandom.current().nextLong(count);
+		if (slot < samples.length) {
+			samples[(int) slot] = value;
+		}
+	}
+
+	/**
+	 * 当前保留的样本
+	 *
+	 * @return
+	 */
+	public synchronized List<Long> getSamples() {
+		List<Long> values = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			values.add(samples[i]);
+		}
+		return values;
+	}
+
+	public synchronized long getCount() {
+		return count;
+	}
+
+	public synchronized long getMax() {
+		return max;
+	}
+}
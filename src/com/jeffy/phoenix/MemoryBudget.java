@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jeffy.phoenix;
+
+/**
+ * @Author Jeffy
+ * @Email: renwu58@gmail.com
+ *
+ *         按字节计数的全局内存预算，所有生产者和消费者共用一个实例。
+ *
+ *         一行数据从生产者放入队列开始占用预算，直到消费者提交(commit)之后才释放，
+ *         因此预算同时约束了队列中的数据和Phoenix客户端中尚未提交的Mutation。
+ *
+ */
+class MemoryBudget {
+	// 预算总字节数
+	private final long limit;
+	// 已经占用的字节数(队列中 + 客户端缓冲中)
+	private long inFlight;
+	// 已经执行upsert但尚未commit的字节数
+	private long buffered;
+	private long peakInFlight;
+	private long peakBuffered;
+	// 提交前采样到的整个JVM已用堆内存的峰值，包括尚未回收的垃圾和其他对象，不只是客户端缓冲的Mutation
+	private long peakHeapUsed;
+
+	public MemoryBudget(long limit) {
+		if (limit <= 0) {
+			throw new IllegalArgumentException("Memory budget must be positive: " + limit);
+		}
+		this.limit = limit;
+	}
+
+	/**
+	 * 解析形如 512k, 256m, 1g 的字节数
+	 *
+	 * @param value
+	 * @return
+	 */
+	public static long parseBytes(String value) {
+		String v = value.trim().toLowerCase();
+		long unit = 1L;
+		char last = v.charAt(v.length() - 1);
+		if (last == 'k') {
+			unit = 1024L;
+		} else if (last == 'm') {
+			unit = 1024L * 1024L;
+		} else if (last == 'g') {
+			unit = 1024L * 1024L * 1024L;
+		}
+		if (unit > 1L) {
+			v = v.substring(0, v.length() - 1);
+		}
+		return Long.parseLong(v) * unit;
+	}
+
+	/**
+	 * 单个消费者未提交数据的字节上限。
+	 *
+	 * 所有消费者缓冲的字节合计不超过预算的一半，这样当所有队列都为空时生产者总能拿到预算，
+	 * 而生产者被阻塞时至少有一个队列非空，对应的消费者可以继续推进并提交，不会死锁。
+	 *
+	 * @param numberOfConsumers
+	 * @return
+	 */
+	public long commitThreshold(int numberOfConsumers) {
+		return Math.max(1L, limit / 2 / Math.max(1, numberOfConsumers));
+	}
+
+	/**
+	 * 生产者放入队列前申请预算，预算不足时阻塞。 为了避免单行超过预算时永远阻塞，预算为空时总是允许申请。
+	 *
+	 * @param bytes
+	 * @throws InterruptedException
+	 */
+	public synchronized void acquire(long bytes) throws InterruptedException {
+		while (inFlight > 0 && inFlight + bytes > limit) {
+			wait();
+		}
+		inFlight += bytes;
+		if (inFlight > peakInFlight) {
+			peakInFlight = inFlight;
+		}
+	}
+
+	/**
+	 * 消费者执行upsert后，数据从队列转入客户端的Mutation缓冲
+	 *
+	 * @param bytes
+	 */
+	public synchronized void buffer(long bytes) {
+		buffered += bytes;
+		if (buffered > peakBuffered) {
+			peakBuffered = buffered;
+		}
+	}
+
+	/**
+	 * 消费者提交后释放预算
+	 *
+	 * @param bytes
+	 */
+	public synchronized void release(long bytes) {
+		inFlight -= bytes;
+		buffered -= bytes;
+		notifyAll();
+	}
+
+	/**
+	 * 在提交前采样整个JVM的已用堆内存(totalMemory - freeMemory，包括垃圾)，此时客户端缓冲的Mutation最多。
+	 * 只能作为上限参考，缓冲的字节数见 getPeakBuffered()
+	 */
+	public void sampleHeap() {
+		Runtime rt = Runtime.getRuntime();
+		long used = rt.totalMemory() - rt.freeMemory();
+		synchronized (this) {
+			if (used > peakHeapUsed) {
+				peakHeapUsed = used;
+			}
+		}
+	}
+
+	public long getLimit() {
+		return limit;
+	}
+
+	public synchronized long getPeakInFlight() {
+		return peakInFlight;
+	}
+
+	public synchronized long getPeakBuffered() {
+		return peakBuffered;
+	}
+
+	public synchronized long getPeakHeapUsed() {
+		return peakHeapUsed;
+	}
+}
@@ -16,26 +16,22 @@
  */
 package com.jeffy.phoenix;
 
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.PreparedStatement;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.sql.SQLException;
-import java.sql.Statement;
-import java.sql.Timestamp;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Properties;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadLocalRandom;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.TimeUnit;
 
-import org.apache.log4j.Logger;
 
 /**
  * @Author Jeffy
@@ -49,6 +45,10 @@ public class PhoenixTest {
 	private String url = "jdbc:phoenix://localhost:2181";
 	// 用于产生随机字符串
 	public static final char[] subset = "0123456789abcdefghijklmnopqrstuvwxyz".toCharArray();
+	// 每个表使用的租户ID前缀
+	public static final String TENANT_PREFIX = "test";
+	// 测试表名前缀
+	public static final String TABLE_PREFIX = "jeffy_";
 	private static final ThreadLocalRandom randon = ThreadLocalRandom.current();
 
 	private String user = "test";
@@ -63,6 +63,46 @@ public class PhoenixTest {
 
 	private long beginTs;
 
+	private long endTs;
+
+	// 按字节计数的内存预算，0表示按行数控制队列和提交
+	private long memoryBudget = 0L;
+
+	private MemoryBudget budget;
+
+	// soak模式运行的时长(毫秒)，0表示按行数运行
+	private long duration = 0L;
+
+	// 所有表合计的目标写入速率(行/秒)，0表示不限速
+	private int rate = 0;
+
+	// soak模式输出统计的间隔(毫秒)
+	private long reportInterval = 60 * 1000L;
+
+	// JFR录制文件，为空时不录制
+	private String recordingFile;
+
+	// JFR录制保留的最大字节数，长时间运行时丢弃最早的数据
+	private long recordingMaxSize = 256L * 1024 * 1024;
+
+	// 测试结果文件，为空时不保存
+	private String resultFile;
+
+	// 行键设计，为空时使用原来的建表语句和顺序id
+	private KeyDesign keyDesign;
+
+	// 建表前先删除已有的表
+	private boolean recreateTables = false;
+
+	// 客户端统计的行键分布，只在指定了行键设计时统计
+	private KeyDistribution keyDistribution;
+
+	// 本次测试提交的总行数
+	private long committedRows;
+
+	// 按列批量传递时每批的行数，0表示逐行传递TestData对象
+	private int batchRows = 0;
+
 	/**
 	 * 参数： JDBC 连接信息： jdbc:phoenix [ :<zookeeper quorum> [ :<port number> ] [
 	 * :<root node> ] [ :<principal> ] [ :<keytab file> ] ] 每个表插入的数据行数 [默认10W]
@@ -70,24 +110,87 @@ public class PhoenixTest {
 	 * 
 	 */
 	public static void main(String[] args) {
+		// --name=value 形式的可选参数，其余按位置解析
+		Map<String, String> options = new HashMap<>();
+		List<String> params = new ArrayList<>();
+		for (String arg : args) {
+			if (arg.startsWith("--")) {
+				int idx = arg.indexOf('=');
+				if (idx > 0) {
+					options.put(arg.substring(2, idx), arg.substring(idx + 1));
+				} else {
+					options.put(arg.substring(2), "true");
+				}
+			} else {
+				params.add(arg);
+			}
+		}
+		if (params.isEmpty()) {
+			showHelp();
+			System.exit(1);
+		}
+		if (KeyDesignExperiment.requested(options)) {
+			new KeyDesignExperiment(params, options).run();
+			return;
+		}
+		create(params, options).start();
+	}
+
+	/**
+	 * 根据位置参数和可选参数创建测试
+	 * 
+	 * @param params
+	 * @param options
+	 * @return
+	 */
+	static PhoenixTest create(List<String> params, Map<String, String> options) {
 		PhoenixTest test = null;
-		int len = args.length;
+		int len = params.size();
 		if (len > 0) {
-			test = new PhoenixTest(args[0]);
+			test = new PhoenixTest(params.get(0));
 		} else {
 			showHelp();
 			System.exit(1);
 		}
 		if (len > 1) {
-			test = new PhoenixTest(args[0], Integer.valueOf(args[1]));
+			test = new PhoenixTest(params.get(0), Integer.valueOf(params.get(1)));
 		}
 		if (len > 2) {
-			test = new PhoenixTest(args[0], Integer.valueOf(args[1]), Integer.valueOf(args[2]));
+			test = new PhoenixTest(params.get(0), Integer.valueOf(params.get(1)), Integer.valueOf(params.get(2)));
 		}
 		if (test == null) {
 			showHelp();
 		}
-		test.start();
+		if (options.containsKey("memory-budget")) {
+			test.setMemoryBudget(MemoryBudget.parseBytes(options.get("memory-budget")));
+		}
+		if (options.containsKey("duration")) {
+			test.setDuration(SoakMonitor.parseDuration(options.get("duration")));
+		}
+		if (options.containsKey("rate")) {
+			test.setRate(Integer.valueOf(options.get("rate")));
+		}
+		if (options.containsKey("interval")) {
+			test.setReportInterval(SoakMonitor.parseDuration(options.get("interval")));
+		}
+		if (options.containsKey("result")) {
+			String result = options.get("result");
+			test.setResultFile("true".equals(result)
+					? "results/phoenix-test-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".json"
+					: result);
+		}
+		if (options.containsKey("batch")) {
+			String batch = options.get("batch");
+			test.setBatchRows("true".equals(batch) ? 1000 : Integer.valueOf(batch));
+		}
+		if (options.containsKey("jfr")) {
+			String jfr = options.get("jfr");
+			test.setRecordingFile("true".equals(jfr) ? "phoenix-test.jfr" : jfr);
+		}
+		if (options.containsKey("jfr-max-size")) {
+			test.setRecordingMaxSize(MemoryBudget.parseBytes(options.get("jfr-max-size")));
+		}
+		return test;
 	}
 
 	private static void showHelp() {
@@ -97,6 +200,23 @@ public class PhoenixTest {
 		System.out.println("\t the second parameter is number of rows each table, optional.");
 		System.out.println(
 				"\t the third parameter is number of thread used. each thread will response to a table, optional.");
+		System.out.println("Options:");
+		System.out.println(
+				"\t --memory-budget=<bytes>\t bound queued and uncommitted rows by bytes instead of row counts, e.g. 256m.");
+		System.out.println("\t --duration=<time>\t soak mode, run for the given time (e.g. 4h) instead of a fixed number of rows.");
+		System.out.println("\t --rate=<rows>\t\t open-loop target rows per second over all tables, default unlimited.");
+		System.out.println("\t --interval=<time>\t soak mode report interval, default 60s.");
+		System.out.println(
+				"\t --batch[=<rows>]\t hand rows over in columnar batches and bind them as JDBC batches, default 1000 rows.");
+		System.out.println(
+				"\t --result[=<file>]\t save config, environment, client version and metrics as JSON, see ResultCompare.");
+		System.out.println(
+				"\t --jfr[=<file>]\t\t record harness events with Java Flight Recorder and summarize them, default phoenix-test.jfr.");
+		System.out.println("\t --jfr-max-size=<bytes>\t keep at most this much of the recording, oldest data dropped first, default 256m.");
+		System.out.println("Key design options, comma separated lists run every combination on recreated tables:");
+		System.out.println("\t --salt-buckets=<n,...>\t SALT_BUCKETS of the test tables, 0 for unsalted, default 3.");
+		System.out.println("\t --id-order=<order,...>\t sequential, reversed, hashed or random ids, default sequential.");
+		System.out.println("\t --split-points=<n,...>\t pre-split unsalted tables into n regions, default 0.");
 	}
 
 	public PhoenixTest() {
@@ -142,6 +262,19 @@ public class PhoenixTest {
 		return new String(chars);
 	}
 
+	/**
+	 * 在字符数组中直接生成随机字符，不创建String
+	 * 
+	 * @param chars
+	 * @param offset
+	 * @param len
+	 */
+	public static void generateChars(char[] chars, int offset, int len) {
+		for (int i = offset; i < offset + len; i++) {
+			chars[i] = subset[randon.nextInt(subset.length)];
+		}
+	}
+
 	public String getUrl() {
 		return url;
 	}
@@ -182,364 +315,295 @@ public class PhoenixTest {
 		this.numberOfRows = numberOfRows;
 	}
 
-	/**
-	 * 开启测试任务
-	 */
-	public void start() {
-		printHeader();
-		ProduceTestData produce = new ProduceTestData(numberOfThreads, numberOfRows);
-		ConsumeData consumer = new ConsumeData(produce, numberOfThreads, url);
-		try {
-			consumer.prepare();
-		} catch (SQLException e) {
-			e.printStackTrace();
-			return;
-		} catch (ClassNotFoundException e) {
-			e.printStackTrace();
-			return;
-		}
-		List<Future<?>> futures = new ArrayList<>();
-		beginTs = System.currentTimeMillis();
-		for (int i = 0; i < numberOfThreads / 2; i++) {
-			futures.add(executor.submit(produce.createProducer(i)));
-			futures.add(executor.submit(consumer.createConsumer(i)));
-		}
-		awaitCommpletion(futures);
-
+	public long getMemoryBudget() {
+		return memoryBudget;
 	}
 
-	/**
-	 * 等待任务完成
-	 * 
-	 * @param futures
-	 */
-	private void awaitCommpletion(List<Future<?>> futures) {
-		futures.forEach((future) -> {
-			try {
-				future.get();
-			} catch (Exception e) {
-				e.printStackTrace();
-			}
-		});
-		System.out
-				.println("All task finished, total time: " + (System.currentTimeMillis() - beginTs) + " millseconds.");
-		executor.shutdown();
+	public void setMemoryBudget(long memoryBudget) {
+		this.memoryBudget = memoryBudget;
 	}
 
-	private void printHeader() {
-		System.out.println("================Test parameter used====================");
-		System.out.println("Test url: " + url);
-		System.out.println("Number of threads: " + numberOfThreads);
-		System.out.println("Number of tables: " + numberOfThreads / 2);
-		System.out.println("Rows in each table: " + numberOfRows);
-		System.out.println("Total rows: " + numberOfRows * numberOfThreads / 2);
-		System.out.println("=======================================================");
+	public long getDuration() {
+		return duration;
 	}
-}
-
-/**
- * 一个生成数据的类
- */
 
-class ProduceTestData {
-	// 保存队列数据
-	private List<ArrayBlockingQueue<Data>> dataPiplelines;
-	// 每个线程使用的计数器
-	private Map<Integer, AtomicLong> seqnoMap;
-	// 每一个队列存储的数据量
-	int size = 100;
-	// 队列的个数
-	int numberOfThreads;
-	int numberOfRows;
-
-	public ProduceTestData(int numberOfThreads, int numberOfRows) {
-		this.numberOfThreads = numberOfThreads / 2;
-		this.numberOfRows = numberOfRows;
-		init();
+	public void setDuration(long duration) {
+		this.duration = duration;
 	}
 
-	public ProduceTestData(int numberOfThreads, int numberOfRows, int queueSize) {
-		this.numberOfThreads = numberOfThreads / 2;
-		this.numberOfRows = numberOfRows;
-		this.size = queueSize;
-		init();
+	public int getRate() {
+		return rate;
 	}
 
-	/**
-	 * 初始化准备
-	 */
-	private void init() {
-		dataPiplelines = new ArrayList<ArrayBlockingQueue<Data>>(numberOfThreads);
-		seqnoMap = new ConcurrentHashMap<Integer, AtomicLong>(numberOfThreads);
-		for (int i = 0; i < numberOfThreads; i++) {
-			dataPiplelines.add(new ArrayBlockingQueue<Data>(size));
-			seqnoMap.put(i, new AtomicLong(0));
-		}
+	public void setRate(int rate) {
+		this.rate = rate;
 	}
 
-	/**
-	 * 根据线程id获取对应的数据队列
-	 * 
-	 * @param threadId
-	 * @return
-	 */
-	public ArrayBlockingQueue<Data> getDataQueue(int threadId) {
-		if (threadId > numberOfThreads || threadId < 0) {
-			throw new IndexOutOfBoundsException("Thread ID: " + threadId + " is not exists!");
-		}
-		return dataPiplelines.get(threadId);
-	}
-
-	public Runnable createProducer(final int id) {
-		return () -> {
-			// 获取到对应线程的队列
-			ArrayBlockingQueue<Data> queue = dataPiplelines.get(id);
-			// 获取对应线程的主键序列号
-			AtomicLong seqnoBuilder = seqnoMap.get(id);
-			long seqno = 0L;
-			while (seqno < numberOfRows) {
-				try {
-					queue.put(buildData(seqno));
-				} catch (InterruptedException e) {
-					e.printStackTrace();
-					return;
-				}
-				seqno = seqnoBuilder.incrementAndGet();
-			}
-			// 通知消费者数据已经产生完了
-			try {
-				queue.put(new ControlData());
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-			}
-		};
+	public long getReportInterval() {
+		return reportInterval;
 	}
 
-	private Data buildData(long seqno) {
-		TestData data = new TestData();
-		data.setId(seqno);
-		data.setName(PhoenixTest.generateString(15));
-		data.setSessionId(System.currentTimeMillis());
-		data.setCreateDate(new Date());
-		data.setUpdateDate(new Date());
-		data.setDescription(PhoenixTest.generateString(100));
-		return data;
+	public void setReportInterval(long reportInterval) {
+		this.reportInterval = reportInterval;
 	}
-}
-
-/**
- * 一个消费数据的类
- */
-
-class ConsumeData {
-	private final static Logger logger = Logger.getLogger(ConsumeData.class);
-	// 保存队列数据
-	private ProduceTestData produce;
-	// 保存数据库连接的Map
-	private Map<Integer, Connection> linkMap;
-	private String tablePrefix = "jeffy_";
-	private String url;
-	private int batchSize = 5000;
-
-	private int numberOfThreads;
-	public final static String PHOENIX_DRIVER = "org.apache.phoenix.jdbc.PhoenixDriver";
-	public final static String createTable = "create table if not exists #tb# (tenantid varchar not null,id bigint not null,name varchar, createts timestamp,  updatets timestamp, sessionid bigint, description varchar, constraint pk primary key (tenantid,id, name) )SALT_BUCKETS=3,MULTI_TENANT=true";
 
-	public final static String upsertStatement = "upsert into #tb# (id ,name , createts ,  updatets , sessionid , description) values (?,?,?,?,?,?)";
-
-	public ConsumeData(ProduceTestData produce, int numberOfThreads, String url) {
-		this.produce = produce;
-		this.numberOfThreads = numberOfThreads / 2;
-		this.url = url;
+	public String getRecordingFile() {
+		return recordingFile;
 	}
 
-	/**
-	 * 准备数据库表
-	 * 
-	 * @throws SQLException
-	 * @throws ClassNotFoundException
-	 */
-	public void prepare() throws SQLException, ClassNotFoundException {
-		Class.forName(PHOENIX_DRIVER);
-		linkMap = new ConcurrentHashMap<>();
-		for (int i = 0; i < numberOfThreads; i++) {
-			Properties pops = new Properties();
-			pops.put("TenantId", "test" + i);
-			Connection conn = DriverManager.getConnection(url, pops);
-			linkMap.put(i, conn);
-			createTestTable(i);
-		}
+	public void setRecordingFile(String recordingFile) {
+		this.recordingFile = recordingFile;
 	}
 
-	/**
-	 * 创建测试的表
-	 * 
-	 * @param threadId
-	 * @param conn
-	 * @throws SQLException
-	 */
-	private void createTestTable(int threadId) throws SQLException {
-		Connection conn = DriverManager.getConnection(url);
-		Statement stmt = conn.createStatement();
-		String sql = createTable.replace("#tb#", tablePrefix + threadId);
-		logger.info("===>" + sql);
-		stmt.executeUpdate(sql);
-		conn.commit();
-		stmt.close();
-		conn.close();
-	}
-
-	public Runnable createConsumer(final int id) {
-		return () -> {
-			ArrayBlockingQueue<Data> dataQueue = produce.getDataQueue(id);
-			Connection conn = linkMap.get(id);
-			PreparedStatement stmt = null;
-			try {
-				conn.setAutoCommit(false);
-			} catch (SQLException e) {// 如果数据库不支持事物，直接忽略错误
-				e.printStackTrace();
-			}
-			try {
-				stmt = conn.prepareStatement(upsertStatement.replace("#tb#", tablePrefix + id));
-			} catch (SQLException e1) {
-				e1.printStackTrace(); // 如果无法创建PrepareStatement则 输出错误退出
-				return;
-			}
-			int i = 0;
-			while (true) {
-				Data data;
-				try {
-					data = dataQueue.take();
-				} catch (InterruptedException e1) {
-					e1.printStackTrace();
-					commit(conn);
-					break;
-				}
-				i++;
-				// logger.info("========>"+data);
-				if (data instanceof TestData) {
-					try {
-						executeUpsertStatement(stmt, (TestData) data);
-						if (i % batchSize == 0) {
-							conn.commit();
-							System.out.print("+");
-							if (i % (batchSize * 10) == 0) {
-								System.out.println(id + "=" + dataQueue.size());
-							}
-						}
-					} catch (SQLException e) {
-						e.printStackTrace();
-						break;
-					}
-				} else if (data instanceof ControlData) {
-					break;
-				} else {
-					continue;
-				}
-			}
-			commit(conn);
-		};
+	public long getRecordingMaxSize() {
+		return recordingMaxSize;
 	}
 
-	private boolean commit(Connection conn) {
-		try {
-			conn.commit();
-		} catch (SQLException e) {
-			e.printStackTrace();
-			return false;
-		}
-		return true;
+	public void setRecordingMaxSize(long recordingMaxSize) {
+		this.recordingMaxSize = recordingMaxSize;
 	}
 
-	private void executeUpsertStatement(PreparedStatement stmt, TestData data) throws SQLException {
-		TestData testData = (TestData) data;
-		stmt.setLong(1, testData.getId());
-		stmt.setString(2, testData.getName());
-		stmt.setTimestamp(3, new Timestamp(testData.getCreateDate().getTime()));
-		stmt.setTimestamp(4, new Timestamp(testData.getUpdateDate().getTime()));
-		stmt.setLong(5, testData.getSessionId());
-		stmt.setString(6, testData.getDescription());
-		stmt.executeUpdate();
+	public String getResultFile() {
+		return resultFile;
 	}
 
-}
-
-interface Data {
-
-}
-
-class ControlData implements Data {
-
-}
-
-class TestData implements Data {
-	private long id;
-	private String name;
-	private Date createDate;
-	private Date updateDate;
-	private long sessionId;
-	private String description;
-
-	/**
-	 * 计算一个Data对象在文件中占用的字节数
-	 * 
-	 * @return
-	 */
-	public int size() {
-		return 4 + name.length() + 8 + 8 + 8 + description.length();
+	public void setResultFile(String resultFile) {
+		this.resultFile = resultFile;
 	}
 
-	public long getId() {
-		return id;
+	public KeyDesign getKeyDesign() {
+		return keyDesign;
 	}
 
-	public void setId(long id) {
-		this.id = id;
+	public void setKeyDesign(KeyDesign keyDesign) {
+		this.keyDesign = keyDesign;
 	}
 
-	public String getName() {
-		return name;
+	/**
+	 * 每个表顺序id的取值范围，用于计算预分区点。
+	 *
+	 * soak模式下行数由时长决定，指定了 --rate 时按 rate × duration 估算每个表的行数；没有指定时无法估算，
+	 * 顺序id预分区后超出范围的行都会写入最后一个region，测不出预分区的效果，因此拒绝这种设计。
+	 *
+	 * @param design
+	 * @return
+	 */
+	long idRange(KeyDesign design) {
+		if (duration <= 0) {
+			return numberOfRows;
+		}
+		if (rate > 0) {
+			return Math.max(1L, (long) rate * (duration / 1000) / Math.max(1, numberOfThreads / 2));
+		}
+		if (design.getIdOrder() == KeyDesign.IdOrder.SEQUENTIAL && design.getSplitPoints() > 1) {
+			throw new IllegalArgumentException(
+					"Sequential ids with --split-points need --rate in soak mode to size the split ranges");
+		}
+		return numberOfRows;
 	}
 
-	public void setName(String name) {
-		this.name = name;
+	public boolean isRecreateTables() {
+		return recreateTables;
 	}
 
-	public Date getCreateDate() {
-		return createDate;
+	public void setRecreateTables(boolean recreateTables) {
+		this.recreateTables = recreateTables;
 	}
 
-	public void setCreateDate(Date createDate) {
-		this.createDate = createDate;
+	public int getBatchRows() {
+		return batchRows;
 	}
 
-	public Date getUpdateDate() {
-		return updateDate;
+	public void setBatchRows(int batchRows) {
+		this.batchRows = batchRows;
 	}
 
-	public void setUpdateDate(Date updateDate) {
-		this.updateDate = updateDate;
+	public KeyDistribution getKeyDistribution() {
+		return keyDistribution;
 	}
 
-	public long getSessionId() {
-		return sessionId;
+	/**
+	 * 测试结束后的平均吞吐(行/秒)
+	 * 
+	 * @return
+	 */
+	public double getRowsPerSecond() {
+		return endTs > beginTs ? committedRows * 1000.0 / (endTs - beginTs) : 0;
 	}
 
-	public void setSessionId(long sessionId) {
-		this.sessionId = sessionId;
+	/**
+	 * 开启测试任务
+	 */
+	public void start() {
+		printHeader();
+		ProduceTestData produce = new ProduceTestData(numberOfThreads, numberOfRows);
+		ConsumeData consumer = new ConsumeData(produce, numberOfThreads, url);
+		if (memoryBudget > 0) {
+			budget = new MemoryBudget(memoryBudget);
+			produce.setBudget(budget);
+			consumer.setBudget(budget);
+		}
+		if (rate > 0) {
+			produce.setRate((double) rate / (numberOfThreads / 2));
+		}
+		if (keyDesign != null) {
+			keyDesign.setIdRange(idRange(keyDesign));
+			keyDistribution = new KeyDistribution(keyDesign, numberOfThreads / 2);
+			produce.setKeyDesign(keyDesign, keyDistribution);
+			consumer.setKeyDesign(keyDesign);
+			consumer.setRecreateTables(recreateTables);
+		}
+		if (batchRows > 0) {
+			produce.enableBatches(batchRows);
+		}
+		try {
+			consumer.prepare();
+		} catch (SQLException e) {
+			e.printStackTrace();
+			return;
+		} catch (ClassNotFoundException e) {
+			e.printStackTrace();
+			return;
+		}
+		HarnessTrace recording = null;
+		if (recordingFile != null) {
+			try {
+				recording = HarnessTrace.record(recordingFile, recordingMaxSize);
+			} catch (Exception e) {// 无法录制时继续测试
+				e.printStackTrace();
+			}
+		}
+		List<Future<?>> futures = new ArrayList<>();
+		beginTs = System.currentTimeMillis();
+		SoakMonitor monitor = null;
+		RunResult result = null;
+		LatencyReservoir commitSample = null;
+		ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+		if (duration > 0) {
+			produce.setDeadline(beginTs + duration);
+			consumer.setQuiet(true);
+			monitor = new SoakMonitor(produce, consumer);
+			monitor.start();
+			reporter.scheduleAtFixedRate(monitor, reportInterval, reportInterval, TimeUnit.MILLISECONDS);
+		}
+		if (resultFile != null) {
+			result = new RunResult();
+			commitSample = new LatencyReservoir();
+			consumer.setCommitSample(commitSample);
+			final RunResult sampled = result;
+			reporter.scheduleAtFixedRate(() -> sampled.sample(consumer.getCommittedRows()), 1, 1, TimeUnit.SECONDS);
+		}
+		for (int i = 0; i < numberOfThreads / 2; i++) {
+			if (batchRows > 0) {
+				futures.add(executor.submit(produce.createBatchProducer(i)));
+				futures.add(executor.submit(consumer.createBatchConsumer(i)));
+			} else {
+				futures.add(executor.submit(produce.createProducer(i)));
+				futures.add(executor.submit(consumer.createConsumer(i)));
+			}
+		}
+		awaitCommpletion(futures);
+		committedRows = consumer.getCommittedRows();
+		reporter.shutdown();
+		if (monitor != null) {
+			monitor.run();
+			monitor.stop();
+		}
+		if (result != null) {
+			saveResult(result, consumer, commitSample);
+		}
+		if (recording != null) {
+			try {
+				recording.finish();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
 	}
 
-	public String getDescription() {
-		return description;
+	/**
+	 * 保存测试结果
+	 * 
+	 * @param result
+	 * @param consumer
+	 * @param commitSample
+	 *            提交耗时的样本
+	 */
+	private void saveResult(RunResult result, ConsumeData consumer, LatencyReservoir commitSample) {
+		result.setStartTime(beginTs);
+		result.setElapsedMs(endTs - beginTs);
+		result.setTotalRows(consumer.getCommittedRows());
+		result.setClientVersion(consumer.getClientVersion());
+		result.setCommitLatencies(commitSample.getSamples());
+		result.setCommits(commitSample.getCount());
+		result.setCommitMaxMicros(commitSample.getMax());
+		result.getConfig().put("url", url);
+		result.getConfig().put("threads", numberOfThreads);
+		result.getConfig().put("tables", numberOfThreads / 2);
+		result.getConfig().put("rowsPerTable", duration > 0 ? 0 : numberOfRows);
+		result.getConfig().put("memoryBudget", memoryBudget);
+		result.getConfig().put("durationMs", duration);
+		result.getConfig().put("rate", rate);
+		result.getConfig().put("batchRows", batchRows);
+		if (keyDesign != null) {
+			result.getConfig().put("keyDesign", keyDesign.toString());
+		}
+		result.captureEnvironment();
+		try {
+			result.write(Paths.get(resultFile));
+			System.out.println("Result saved to: " + resultFile);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
 	}
 
-	public void setDescription(String description) {
-		this.description = description;
+	/**
+	 * 等待任务完成
+	 * 
+	 * @param futures
+	 */
+	private void awaitCommpletion(List<Future<?>> futures) {
+		futures.forEach((future) -> {
+			try {
+				future.get();
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		});
+		endTs = System.currentTimeMillis();
+		System.out.println("All task finished, total time: " + (endTs - beginTs) + " millseconds.");
+		if (budget != null) {
+			System.out.println("Peak bytes in flight: " + budget.getPeakInFlight());
+			System.out.println("Peak buffered mutation bytes (estimated): " + budget.getPeakBuffered());
+			System.out.println("Peak JVM heap used before commit (incl. garbage): " + budget.getPeakHeapUsed());
+		}
+		executor.shutdown();
 	}
 
-	@Override
-	public String toString() {
-		return "Data [id=" + id + ", name=" + name + ", createDate=" + createDate + ", updateDate=" + updateDate
-				+ ", sessionId=" + sessionId + ", description=" + description + "]";
+	private void printHeader() {
+		System.out.println("================Test parameter used====================");
+		System.out.println("Test url: " + url);
+		System.out.println("Number of threads: " + numberOfThreads);
+		System.out.println("Number of tables: " + numberOfThreads / 2);
+		if (duration > 0) {
+			System.out.println("Soak duration: " + duration / 1000 + " seconds");
+			System.out.println("Report interval: " + reportInterval / 1000 + " seconds");
+		} else {
+			System.out.println("Rows in each table: " + numberOfRows);
+			System.out.println("Total rows: " + numberOfRows * numberOfThreads / 2);
+		}
+		if (rate > 0) {
+			System.out.println("Target rate: " + rate + " rows/second");
+		}
+		if (keyDesign != null) {
+			System.out.println("Key design: " + keyDesign);
+		}
+		if (batchRows > 0) {
+			System.out.println("Columnar batch rows: " + batchRows);
+		}
+		if (memoryBudget > 0) {
+			System.out.println("Memory budget: " + memoryBudget + " bytes");
+		}
+		System.out.println("=======================================================");
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,291 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jeffy.phoenix;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.jeffy.phoenix.HarnessTrace.Span;
+import com.jeffy.phoenix.HarnessTrace.Stage;
+
+/**
+ * 一个生成数据的类
+ */
+
+class ProduceTestData {
+	// 按列批量传递时，每个表同时存在的批次个数
+	static final int BATCHES_PER_TABLE = 4;
+	// 保存队列数据
+	private List<ArrayBlockingQueue<Data>> dataPiplelines;
+	// 按列批量传递时使用的通道，为空时逐行传递
+	private List<BatchChannel> batchPipelines;
+	// 每个线程使用的计数器
+	private Map<Integer, AtomicLong> seqnoMap;
+	// 每一个队列存储的数据量
+	int size = 100;
+	// 队列的个数
+	int numberOfThreads;
+	int numberOfRows;
+	// 按字节计数的内存预算，为空时只按队列长度控制
+	private MemoryBudget budget;
+	// soak模式的结束时间，0表示按行数结束
+	private long deadline = 0L;
+	// 每个生产者的目标速率(行/秒)，0表示不限速
+	private double rate = 0;
+	// 统计间隔内落后于计划发送时间的最大值(毫秒)
+	private final AtomicLong scheduleLag = new AtomicLong();
+	// 行键设计，决定id的生成方式
+	private KeyDesign keyDesign = new KeyDesign();
+	// 客户端统计的行键分布，为空时不统计
+	private KeyDistribution keyDistribution;
+
+	public ProduceTestData(int numberOfThreads, int numberOfRows) {
+		this.numberOfThreads = numberOfThreads / 2;
+		this.numberOfRows = numberOfRows;
+		init();
+	}
+
+	public ProduceTestData(int numberOfThreads, int numberOfRows, int queueSize) {
+		this.numberOfThreads = numberOfThreads / 2;
+		this.numberOfRows = numberOfRows;
+		this.size = queueSize;
+		init();
+	}
+
+	/**
+	 * 初始化准备
+	 */
+	private void init() {
+		dataPiplelines = new ArrayList<ArrayBlockingQueue<Data>>(numberOfThreads);
+		seqnoMap = new ConcurrentHashMap<Integer, AtomicLong>(numberOfThreads);
+		for (int i = 0; i < numberOfThreads; i++) {
+			dataPiplelines.add(new ArrayBlockingQueue<Data>(size));
+			seqnoMap.put(i, new AtomicLong(0));
+		}
+	}
+
+	/**
+	 * 根据线程id获取对应的数据队列
+	 * 
+	 * @param threadId
+	 * @return
+	 */
+	public ArrayBlockingQueue<Data> getDataQueue(int threadId) {
+		if (threadId > numberOfThreads || threadId < 0) {
+			throw new IndexOutOfBoundsException("Thread ID: " + threadId + " is not exists!");
+		}
+		return dataPiplelines.get(threadId);
+	}
+
+	/**
+	 * 改为按列批量传递数据
+	 * 
+	 * @param batchRows
+	 *            每批的行数
+	 */
+	public void enableBatches(int batchRows) {
+		batchPipelines = new ArrayList<BatchChannel>(numberOfThreads);
+		for (int i = 0; i < numberOfThreads; i++) {
+			batchPipelines.add(new BatchChannel(BATCHES_PER_TABLE, batchRows));
+		}
+	}
+
+	/**
+	 * 根据线程id获取对应的批量数据通道
+	 * 
+	 * @param threadId
+	 * @return
+	 */
+	public BatchChannel getBatchChannel(int threadId) {
+		if (threadId > numberOfThreads || threadId < 0) {
+			throw new IndexOutOfBoundsException("Thread ID: " + threadId + " is not exists!");
+		}
+		return batchPipelines.get(threadId);
+	}
+
+	public void setBudget(MemoryBudget budget) {
+		this.budget = budget;
+	}
+
+	public void setKeyDesign(KeyDesign keyDesign, KeyDistribution keyDistribution) {
+		this.keyDesign = keyDesign;
+		this.keyDistribution = keyDistribution;
+	}
+
+	public void setDeadline(long deadline) {
+		this.deadline = deadline;
+	}
+
+	public void setRate(double rate) {
+		this.rate = rate;
+	}
+
+	public long getAndResetScheduleLag() {
+		return scheduleLag.getAndSet(0L);
+	}
+
+	/**
+	 * 是否还需要继续产生数据
+	 * 
+	 * @param seqno
+	 * @return
+	 */
+	private boolean hasMore(long seqno) {
+		if (deadline > 0) {
+			return System.currentTimeMillis() < deadline;
+		}
+		return seqno < numberOfRows;
+	}
+
+	/**
+	 * 按固定速率(开环)控制发送：计划发送时间只与开始时间和序号有关，不受数据库响应快慢影响，
+	 * 落后于计划时不再等待，并记录落后的时间。
+	 * 
+	 * @param begin
+	 *            开始时间(纳秒)
+	 * @param sent
+	 *            已发送的行数
+	 * @throws InterruptedException
+	 */
+	private void pace(long begin, long sent) throws InterruptedException {
+		long intended = begin + (long) (sent * 1000000000L / rate);
+		long delay = intended - System.nanoTime();
+		if (delay > 0) {
+			TimeUnit.NANOSECONDS.sleep(delay);
+		} else {
+			long lag = TimeUnit.NANOSECONDS.toMillis(-delay);
+			scheduleLag.accumulateAndGet(lag, Math::max);
+		}
+	}
+
+	public Runnable createProducer(final int id) {
+		return () -> {
+			// 获取到对应线程的队列
+			ArrayBlockingQueue<Data> queue = dataPiplelines.get(id);
+			// 获取对应线程的主键序列号
+			AtomicLong seqnoBuilder = seqnoMap.get(id);
+			String table = PhoenixTest.TABLE_PREFIX + id;
+			String tenant = PhoenixTest.TENANT_PREFIX + id;
+			long seqno = 0L;
+			long sent = 0L;
+			long begin = System.nanoTime();
+			while (hasMore(seqno)) {
+				try {
+					if (rate > 0) {
+						pace(begin, sent++);
+					}
+					Span generate = HarnessTrace.begin(Stage.GENERATE);
+					TestData data = buildData(id, seqno);
+					generate.end(table, tenant, 1, data.size());
+					if (keyDistribution != null) {
+						keyDistribution.record(id, data);
+					}
+					// 队列等待包含内存预算的等待
+					Span put = HarnessTrace.begin(Stage.QUEUE_PUT);
+					if (budget != null) {
+						budget.acquire(data.size());
+					}
+					queue.put(data);
+					put.end(table, tenant, 1, data.size());
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+					return;
+				}
+				seqno = seqnoBuilder.incrementAndGet();
+			}
+			// 通知消费者数据已经产生完了
+			try {
+				queue.put(new ControlData());
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+		};
+	}
+
+	/**
+	 * 按列批量产生数据，整批放入通道，结束时关闭通道通知消费者
+	 * 
+	 * @param id
+	 * @return
+	 */
+	public Runnable createBatchProducer(final int id) {
+		return () -> {
+			BatchChannel channel = batchPipelines.get(id);
+			AtomicLong seqnoBuilder = seqnoMap.get(id);
+			String table = PhoenixTest.TABLE_PREFIX + id;
+			String tenant = PhoenixTest.TENANT_PREFIX + id;
+			int tenantBytes = TestData.utf8Length(tenant);
+			// 有内存预算时一个批次不超过单个消费者的提交阈值，否则整批申请预算会超出较小的预算，
+			// 同时所有表只能有一个批次在传递
+			long batchBytes = budget == null ? Long.MAX_VALUE : budget.commitThreshold(numberOfThreads);
+			long seqno = 0L;
+			long sent = 0L;
+			long begin = System.nanoTime();
+			try {
+				while (hasMore(seqno)) {
+					RowBatch batch = channel.acquire();
+					batch.reset(tenant);
+					// 限速时生成时间中包含等待的时间
+					Span generate = HarnessTrace.begin(Stage.GENERATE);
+					while (!batch.isFull() && batch.bytes < batchBytes && hasMore(seqno)) {
+						if (rate > 0) {
+							pace(begin, sent++);
+						}
+						batch.addRow(keyDesign.toId(seqno), System.currentTimeMillis(), tenantBytes);
+						if (keyDistribution != null) {
+							int row = batch.rows - 1;
+							keyDistribution.record(id, tenant, batch.ids[row],
+									CharBuffer.wrap(batch.arena, batch.nameOffsets[row], batch.nameLengths[row]));
+						}
+						seqno = seqnoBuilder.incrementAndGet();
+					}
+					generate.end(table, tenant, batch.rows, batch.bytes);
+					Span put = HarnessTrace.begin(Stage.QUEUE_PUT);
+					if (budget != null) {
+						budget.acquire(batch.bytes);
+					}
+					channel.put(batch);
+					put.end(table, tenant, batch.rows, batch.bytes);
+				}
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			} finally {
+				// 通知消费者数据已经产生完了
+				channel.close();
+			}
+		};
+	}
+
+	private TestData buildData(int threadId, long seqno) {
+		TestData data = new TestData();
+		data.setTenantId(PhoenixTest.TENANT_PREFIX + threadId);
+		data.setId(keyDesign.toId(seqno));
+		data.setName(PhoenixTest.generateString(15));
+		data.setSessionId(System.currentTimeMillis());
+		data.setCreateDate(new Date());
+		data.setUpdateDate(new Date());
+		data.setDescription(PhoenixTest.generateString(100));
+		return data;
+	}
+}
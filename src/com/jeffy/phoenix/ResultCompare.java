@@ -0,0 +1,375 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jeffy.phoenix;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * @Author Jeffy
+ * @Email: renwu58@gmail.com
+ *
+ *         离线比较两次测试保存的结果文件(--result)，对吞吐做Welch t检验，对提交耗时的百分位数做bootstrap检验，
+ *         变化超过阈值且显著时以非0状态退出，可用于升级Phoenix客户端前的回归检查。
+ *
+ */
+public class ResultCompare {
+	// 发现性能回退时的退出码
+	public static final int EXIT_REGRESSION = 2;
+
+	private static final double[] PERCENTILES = { 0.50, 0.90, 0.99 };
+	private static final int BOOTSTRAP_ROUNDS = 2000;
+
+	// 吞吐下降超过该百分比视为回退
+	private double throughputThreshold = 5.0;
+	// 提交耗时百分位数上升超过该百分比视为回退
+	private double latencyThreshold = 10.0;
+	// 显著性水平
+	private double alpha = 0.05;
+	// 每组样本至少需要的个数，不足时不做检验，也不判定为回退
+	private int minSamples = 10;
+
+	/**
+	 * 参数： 基准结果文件 待比较的结果文件 [--threshold=5] [--latency-threshold=10] [--alpha=0.05] [--min-samples=10]
+	 */
+	public static void main(String[] args) {
+		ResultCompare compare = new ResultCompare();
+		List<String> files = new ArrayList<>();
+		for (String arg : args) {
+			if (arg.startsWith("--threshold=")) {
+				compare.setThroughputThreshold(Double.parseDouble(arg.substring("--threshold=".length())));
+			} else if (arg.startsWith("--latency-threshold=")) {
+				compare.setLatencyThreshold(Double.parseDouble(arg.substring("--latency-threshold=".length())));
+			} else if (arg.startsWith("--alpha=")) {
+				compare.setAlpha(Double.parseDouble(arg.substring("--alpha=".length())));
+			} else if (arg.startsWith("--min-samples=")) {
+				compare.setMinSamples(Integer.parseInt(arg.substring("--min-samples=".length())));
+			} else {
+				files.add(arg);
+			}
+		}
+		if (files.size() != 2) {
+			showHelp();
+			System.exit(1);
+		}
+		boolean regression;
+		try {
+			RunResult baseline = RunResult.read(Paths.get(files.get(0)));
+			RunResult candidate = RunResult.read(Paths.get(files.get(1)));
+			regression = compare.compare(baseline, candidate);
+		} catch (IOException | RuntimeException e) {
+			e.printStackTrace();
+			System.exit(1);
+			return;
+		}
+		System.exit(regression ? EXIT_REGRESSION : 0);
+	}
+
+	private static void showHelp() {
+		System.out.println("==Compare two Phoenix JDBC write performance results==");
+		System.out.println("Usage:");
+		System.out.println("\t the first parameter is the baseline result file.");
+		System.out.println("\t the second parameter is the candidate result file.");
+		System.out.println("\t --threshold=<percent>\t\t throughput drop treated as regression, default 5.");
+		System.out.println("\t --latency-threshold=<percent>\t commit latency percentile increase treated as regression, default 10.");
+		System.out.println("\t --alpha=<level>\t\t significance level, default 0.05.");
+		System.out.println("\t --min-samples=<n>\t\t samples needed on each side to test a metric, default 10.");
+		System.out.println("Exit status is " + EXIT_REGRESSION + " when a significant regression is found.");
+	}
+
+	/**
+	 * 比较两次结果并输出报告
+	 *
+	 * @param baseline
+	 * @param candidate
+	 * @return 是否存在显著的性能回退
+	 */
+	public boolean compare(RunResult baseline, RunResult candidate) {
+		System.out.println("================Result comparison======================");
+		System.out.println("Client version: " + baseline.getClientVersion() + " -> " + candidate.getClientVersion());
+		printDifferences("config", baseline.getConfig(), candidate.getConfig());
+		printDifferences("environment", baseline.getEnvironment(), candidate.getEnvironment());
+		System.out.println(String.format("%-16s %14s %14s %9s %9s  %s", "metric", "baseline", "candidate", "change%",
+				"p-value", "verdict"));
+
+		boolean regression = false;
+		// 吞吐: 越大越好
+		double base = baseline.getRowsPerSecond();
+		double cand = candidate.getRowsPerSecond();
+		double[] baseThroughput = RunResult.toDoubles(baseline.getThroughputSamples());
+		double[] candThroughput = RunResult.toDoubles(candidate.getThroughputSamples());
+		double p = enough(baseThroughput, candThroughput) ? welchTTest(baseThroughput, candThroughput) : Double.NaN;
+		regression |= report("rows/second", base, cand, -change(base, cand), throughputThreshold, p);
+
+		// 提交耗时: 越小越好
+		double[] baseLatency = RunResult.toDoubles(baseline.getCommitLatencies());
+		double[] candLatency = RunResult.toDoubles(candidate.getCommitLatencies());
+		double[] pValues = new double[PERCENTILES.length];
+		if (enough(baseLatency, candLatency)) {
+			pValues = bootstrapPercentileTest(baseLatency, candLatency, PERCENTILES);
+		} else {
+			Arrays.fill(pValues, Double.NaN);
+		}
+		for (int i = 0; i < PERCENTILES.length; i++) {
+			double q = PERCENTILES[i];
+			base = RunResult.percentile(baseLatency, q) / 1000.0;
+			cand = RunResult.percentile(candLatency, q) / 1000.0;
+			regression |= report("commit p" + Math.round(q * 100) + "(ms)", base, cand, change(base, cand),
+					latencyThreshold, pValues[i]);
+		}
+		System.out.println("=======================================================");
+		System.out.println(regression ? "REGRESSION detected." : "No significant regression.");
+		return regression;
+	}
+
+	/**
+	 * 输出一行比较结果
+	 *
+	 * @param worse
+	 *            变差的百分比，正数表示变差
+	 * @param p
+	 *            p值，样本不足无法检验时为NaN，此时不判定为回退
+	 * @return 是否回退
+	 */
+	private boolean report(String metric, double base, double cand, double worse, double threshold, double p) {
+		boolean significant = !Double.isNaN(p) && p < alpha;
+		boolean regression = worse > threshold && significant;
+		String verdict;
+		if (Double.isNaN(p)) {
+			verdict = "insufficient samples";
+		} else if (regression) {
+			verdict = "REGRESSION";
+		} else if (worse > threshold) {
+			verdict = "worse, not significant";
+		} else if (-worse > threshold && significant) {
+			verdict = "improved";
+		} else {
+			verdict = "ok";
+		}
+		System.out.println(String.format("%-16s %14.2f %14.2f %+9.2f %9s  %s", metric, base, cand,
+				change(base, cand), Double.isNaN(p) ? "n/a" : String.format("%.4f", p), verdict));
+		return regression;
+	}
+
+	/**
+	 * 两组样本是否都达到检验需要的个数
+	 */
+	private boolean enough(double[] a, double[] b) {
+		int min = Math.max(2, minSamples);
+		return a.length >= min && b.length >= min;
+	}
+
+	private static double change(double base, double cand) {
+		if (base == 0) {
+			return cand == 0 ? 0 : 100.0;
+		}
+		return (cand - base) / base * 100.0;
+	}
+
+	private static void printDifferences(String name, Map<String, Object> base, Map<String, Object> cand) {
+		TreeSet<String> keys = new TreeSet<>(base.keySet());
+		keys.addAll(cand.keySet());
+		for (String key : keys) {
+			if (!Objects.equals(base.get(key), cand.get(key))) {
+				System.out.println("Differs " + name + "." + key + ": " + base.get(key) + " -> " + cand.get(key));
+			}
+		}
+	}
+
+	/**
+	 * Welch t检验(两样本方差不等)，返回双侧p值，样本不足时返回NaN
+	 *
+	 * @param a
+	 * @param b
+	 * @return
+	 */
+	static double welchTTest(double[] a, double[] b) {
+		if (a.length < 2 || b.length < 2) {
+			return Double.NaN;
+		}
+		double ma = mean(a);
+		double mb = mean(b);
+		double va = variance(a, ma) / a.length;
+		double vb = variance(b, mb) / b.length;
+		if (va + vb == 0) {
+			return ma == mb ? 1.0 : 0.0;
+		}
+		double t = (ma - mb) / Math.sqrt(va + vb);
+		double df = (va + vb) * (va + vb) / (va * va / (a.length - 1) + vb * vb / (b.length - 1));
+		return regularizedBeta(df / (df + t * t), df / 2, 0.5);
+	}
+
+	/**
+	 * 对两组样本分别有放回抽样，统计每个百分位数之差的符号，返回各百分位数的双侧p值，样本为空时为NaN。
+	 * 每次抽样只排序一次，同时计算所有百分位数
+	 *
+	 * @param a
+	 * @param b
+	 * @param qs
+	 * @return
+	 */
+	static double[] bootstrapPercentileTest(double[] a, double[] b, double[] qs) {
+		double[] p = new double[qs.length];
+		if (a.length == 0 || b.length == 0) {
+			Arrays.fill(p, Double.NaN);
+			return p;
+		}
+		// 固定种子，同样的文件每次比较结果一致
+		Random random = new Random(42);
+		double[] ra = new double[a.length];
+		double[] rb = new double[b.length];
+		int[] below = new int[qs.length];
+		int[] above = new int[qs.length];
+		for (int i = 0; i < BOOTSTRAP_ROUNDS; i++) {
+			for (int j = 0; j < ra.length; j++) {
+				ra[j] = a[random.nextInt(a.length)];
+			}
+			for (int j = 0; j < rb.length; j++) {
+				rb[j] = b[random.nextInt(b.length)];
+			}
+			Arrays.sort(ra);
+			Arrays.sort(rb);
+			for (int k = 0; k < qs.length; k++) {
+				double diff = RunResult.sortedPercentile(rb, qs[k]) - RunResult.sortedPercentile(ra, qs[k]);
+				if (diff <= 0) {
+					below[k]++;
+				}
+				if (diff >= 0) {
+					above[k]++;
+				}
+			}
+		}
+		for (int k = 0; k < qs.length; k++) {
+			p[k] = Math.min(1.0, 2.0 * Math.min(below[k], above[k]) / BOOTSTRAP_ROUNDS);
+		}
+		return p;
+	}
+
+	private static double mean(double[] values) {
+		double sum = 0;
+		for (double v : values) {
+			sum += v;
+		}
+		return sum / values.length;
+	}
+
+	private static double variance(double[] values, double mean) {
+		double sum = 0;
+		for (double v : values) {
+			sum += (v - mean) * (v - mean);
+		}
+		return sum / (values.length - 1);
+	}
+
+	/**
+	 * 正则化不完全Beta函数 I_x(a, b)，用连分式计算(Numerical Recipes betai)
+	 */
+	static double regularizedBeta(double x, double a, double b) {
+		if (x <= 0) {
+			return 0;
+		}
+		if (x >= 1) {
+			return 1;
+		}
+		double front = Math.exp(logGamma(a + b) - logGamma(a) - logGamma(b) + a * Math.log(x) + b * Math.log(1 - x));
+		if (x < (a + 1) / (a + b + 2)) {
+			return front * betaContinuedFraction(x, a, b) / a;
+		}
+		return 1 - front * betaContinuedFraction(1 - x, b, a) / b;
+	}
+
+	private static double betaContinuedFraction(double x, double a, double b) {
+		final double tiny = 1e-300;
+		double c = 1;
+		double d = 1 - (a + b) * x / (a + 1);
+		d = 1 / (Math.abs(d) < tiny ? tiny : d);
+		double h = d;
+		for (int m = 1; m <= 300; m++) {
+			int m2 = 2 * m;
+			double aa = m * (b - m) * x / ((a + m2 - 1) * (a + m2));
+			d = 1 + aa * d;
+			d = 1 / (Math.abs(d) < tiny ? tiny : d);
+			c = 1 + aa / (Math.abs(c) < tiny ? tiny : c);
+			h *= d * c;
+			aa = -(a + m) * (a + b + m) * x / ((a + m2) * (a + m2 + 1));
+			d = 1 + aa * d;
+			d = 1 / (Math.abs(d) < tiny ? tiny : d);
+			c = 1 + aa / (Math.abs(c) < tiny ? tiny : c);
+			double delta = d * c;
+			h *= delta;
+			if (Math.abs(delta - 1) < 1e-12) {
+				break;
+			}
+		}
+		return h;
+	}
+
+	/**
+	 * Lanczos近似计算 ln(Gamma(x))
+	 */
+	private static double logGamma(double x) {
+		double[] coef = { 76.18009172947146, -86.50532032941677, 24.01409824083091, -1.231739572450155,
+				0.1208650973866179e-2, -0.5395239384953e-5 };
+		double y = x;
+		double tmp = x + 5.5;
+		tmp -= (x + 0.5) * Math.log(tmp);
+		double ser = 1.000000000190015;
+		for (double c : coef) {
+			ser += c / ++y;
+		}
+		return -tmp + Math.log(2.5066282746310005 * ser / x);
+	}
+
+	public double getThroughputThreshold() {
+		return throughputThreshold;
+	}
+
+	public void setThroughputThreshold(double throughputThreshold) {
+		this.throughputThreshold = throughputThreshold;
+	}
+
+	public double getLatencyThreshold() {
+		return latencyThreshold;
+	}
+
+	public void setLatencyThreshold(double latencyThreshold) {
+		this.latencyThreshold = latencyThreshold;
+	}
+
+	public int getMinSamples() {
+		return minSamples;
+	}
+
+	public void setMinSamples(int minSamples) {
+		this.minSamples = minSamples;
+	}
+
+	public double getAlpha() {
+		return alpha;
+	}
+
+	public void setAlpha(double alpha) {
+		this.alpha = alpha;
+	}
+}
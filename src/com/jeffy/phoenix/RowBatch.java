@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jeffy.phoenix;
+
+import java.util.Arrays;
+
+/**
+ * @Author Jeffy
+ * @Email: renwu58@gmail.com
+ *
+ *         按列存放的一批测试数据。数值列使用long数组，字符串列共用一个char数组，只记录每行的偏移和长度，
+ *         一批数据整体在生产者和消费者之间传递，并且循环使用，不为每一行创建对象。
+ *
+ */
+class RowBatch {
+	// 每行字符串的预估长度，用于初始化字符数组
+	private static final int CHARS_PER_ROW = 15 + 100;
+
+	final int capacity;
+	// 当前批次所属的租户，每个表只有一个租户
+	String tenant;
+	int rows;
+	// 当前批次在Phoenix客户端中占用的字节数，见 TestData.size()
+	long bytes;
+
+	final long[] ids;
+	final long[] sessionIds;
+	final long[] createTs;
+	final long[] updateTs;
+	final int[] nameOffsets;
+	final int[] nameLengths;
+	final int[] descOffsets;
+	final int[] descLengths;
+	char[] arena;
+	int arenaUsed;
+
+	public RowBatch(int capacity) {
+		this.capacity = capacity;
+		ids = new long[capacity];
+		sessionIds = new long[capacity];
+		createTs = new long[capacity];
+		updateTs = new long[capacity];
+		nameOffsets = new int[capacity];
+		nameLengths = new int[capacity];
+		descOffsets = new int[capacity];
+		descLengths = new int[capacity];
+		arena = new char[capacity * CHARS_PER_ROW];
+	}
+
+	/**
+	 * 清空后重新使用
+	 *
+	 * @param tenant
+	 */
+	public void reset(String tenant) {
+		this.tenant = tenant;
+		rows = 0;
+		bytes = 0L;
+		arenaUsed = 0;
+	}
+
+	public boolean isFull() {
+		return rows == capacity;
+	}
+
+	/**
+	 * 在字符数组中生成指定长度的随机字符串
+	 *
+	 * @param len
+	 * @return 字符串的起始偏移
+	 */
+	int appendRandom(int len) {
+		if (arenaUsed + len > arena.length) {
+			arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaUsed + len));
+		}
+		int offset = arenaUsed;
+		PhoenixTest.generateChars(arena, offset, len);
+		arenaUsed += len;
+		return offset;
+	}
+
+	/**
+	 * 生成一行数据
+	 *
+	 * @param id
+	 * @param now
+	 *            当前时间，作为会话ID和创建、更新时间
+	 * @param tenantBytes
+	 *            租户ID按UTF-8编码的字节数
+	 */
+	public void addRow(long id, long now, int tenantBytes) {
+		int row = rows++;
+		ids[row] = id;
+		sessionIds[row] = now;
+		createTs[row] = now;
+		updateTs[row] = now;
+		nameLengths[row] = 15;
+		nameOffsets[row] = appendRandom(15);
+		descLengths[row] = 100;
+		descOffsets[row] = appendRandom(100);
+		bytes += TestData.size(tenantBytes, TestData.utf8Length(arena, nameOffsets[row], nameLengths[row]),
+				TestData.utf8Length(arena, descOffsets[row], descLengths[row]));
+	}
+
+	public String name(int row) {
+		return new String(arena, nameOffsets[row], nameLengths[row]);
+	}
+
+	public String description(int row) {
+		return new String(arena, descOffsets[row], descLengths[row]);
+	}
+}
@@ -0,0 +1,282 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jeffy.phoenix;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * @Author Jeffy
+ * @Email: renwu58@gmail.com
+ *
+ *         一次测试的结果，保存为带版本号的JSON文件，包含测试参数、运行环境、Phoenix客户端版本、汇总指标和原始样本，
+ *         供 ResultCompare 离线比较。提交耗时只保存固定大小的抽样(见 LatencyReservoir)，总次数和最大值另外精确保存。
+ *
+ */
+class RunResult {
+	// 结果文件格式的版本，格式不兼容时递增。版本2起提交耗时为抽样，版本1保存的全部耗时仍可读取
+	public static final int SCHEMA_VERSION = 2;
+
+	private Map<String, Object> config = new LinkedHashMap<>();
+	private Map<String, Object> environment = new LinkedHashMap<>();
+	private String clientVersion = "unknown";
+	private long startTime;
+	private long elapsedMs;
+	private long totalRows;
+	// 每秒提交的行数
+	private List<Long> throughputSamples = new ArrayList<>();
+	// 提交耗时(微秒)的抽样
+	private List<Long> commitLatencies = new ArrayList<>();
+	// 提交的总次数和最大耗时(微秒)
+	private long commits;
+	private long commitMaxMicros;
+
+	private long lastRows;
+
+	/**
+	 * 记录当前JVM和操作系统的信息
+	 */
+	public void captureEnvironment() {
+		Runtime rt = Runtime.getRuntime();
+		environment.put("java.version", System.getProperty("java.version"));
+		environment.put("java.vm.name", System.getProperty("java.vm.name"));
+		environment.put("os.name", System.getProperty("os.name"));
+		environment.put("os.arch", System.getProperty("os.arch"));
+		environment.put("processors", rt.availableProcessors());
+		environment.put("max.heap", rt.maxMemory());
+	}
+
+	/**
+	 * 每秒调用一次，记录这一秒内提交的行数
+	 *
+	 * @param committedRows
+	 *            累计已提交的行数
+	 */
+	public synchronized void sample(long committedRows) {
+		throughputSamples.add(committedRows - lastRows);
+		lastRows = committedRows;
+	}
+
+	public double getRowsPerSecond() {
+		return elapsedMs == 0 ? 0 : totalRows * 1000.0 / elapsedMs;
+	}
+
+	/**
+	 * 提交耗时的百分位数(毫秒)，按抽样计算
+	 *
+	 * @param p
+	 *            0到1之间
+	 * @return
+	 */
+	public double getCommitPercentile(double p) {
+		return percentile(toDoubles(commitLatencies), p) / 1000.0;
+	}
+
+	/**
+	 * 按最近秩(nearest-rank)计算百分位数
+	 *
+	 * @param values
+	 * @param p
+	 * @return
+	 */
+	static double percentile(double[] values, double p) {
+		if (values.length == 0) {
+			return 0;
+		}
+		double[] sorted = values.clone();
+		Arrays.sort(sorted);
+		return sortedPercentile(sorted, p);
+	}
+
+	/**
+	 * 在已经升序排列的数组上按最近秩计算百分位数
+	 *
+	 * @param sorted
+	 * @param p
+	 * @return
+	 */
+	static double sortedPercentile(double[] sorted, double p) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		int idx = (int) Math.ceil(p * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(sorted.length - 1, idx))];
+	}
+
+	static double[] toDoubles(List<Long> values) {
+		double[] result = new double[values.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = values.get(i);
+		}
+		return result;
+	}
+
+	public void write(Path file) throws IOException {
+		Map<String, Object> metrics = new LinkedHashMap<>();
+		metrics.put("totalRows", totalRows);
+		metrics.put("elapsedMs", elapsedMs);
+		metrics.put("rowsPerSecond", getRowsPerSecond());
+		metrics.put("commitP50Ms", getCommitPercentile(0.50));
+		metrics.put("commitP90Ms", getCommitPercentile(0.90));
+		metrics.put("commitP99Ms", getCommitPercentile(0.99));
+		metrics.put("commitMaxMs", commitMaxMicros / 1000.0);
+		metrics.put("commits", commits);
+
+		Map<String, Object> samples = new LinkedHashMap<>();
+		samples.put("throughputPerSecond", throughputSamples);
+		samples.put("commitLatencyMicros", commitLatencies);
+
+		Map<String, Object> root = new LinkedHashMap<>();
+		root.put("schemaVersion", SCHEMA_VERSION);
+		root.put("startTime", startTime);
+		root.put("clientVersion", clientVersion);
+		root.put("config", config);
+		root.put("environment", environment);
+		root.put("metrics", metrics);
+		root.put("samples", samples);
+		if (file.getParent() != null) {
+			Files.createDirectories(file.getParent());
+		}
+		Files.write(file, Json.write(root).getBytes(StandardCharsets.UTF_8));
+	}
+
+	@SuppressWarnings("unchecked")
+	public static RunResult read(Path file) throws IOException {
+		Map<String, Object> root = (Map<String, Object>) Json
+				.parse(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+		Object version = root.get("schemaVersion");
+		if (!(version instanceof Number) || ((Number) version).intValue() < 1
+				|| ((Number) version).intValue() > SCHEMA_VERSION) {
+			throw new IOException("Unsupported result schema version " + version + " in " + file);
+		}
+		RunResult result = new RunResult();
+		result.startTime = ((Number) root.get("startTime")).longValue();
+		result.clientVersion = (String) root.get("clientVersion");
+		result.config = (Map<String, Object>) root.get("config");
+		result.environment = (Map<String, Object>) root.get("environment");
+		Map<String, Object> metrics = (Map<String, Object>) root.get("metrics");
+		result.totalRows = ((Number) metrics.get("totalRows")).longValue();
+		result.elapsedMs = ((Number) metrics.get("elapsedMs")).longValue();
+		Map<String, Object> samples = (Map<String, Object>) root.get("samples");
+		result.throughputSamples = toLongs((List<Object>) samples.get("throughputPerSecond"));
+		result.commitLatencies = toLongs((List<Object>) samples.get("commitLatencyMicros"));
+		if (metrics.get("commits") instanceof Number) {
+			result.commits = ((Number) metrics.get("commits")).longValue();
+			result.commitMaxMicros = Math.round(((Number) metrics.get("commitMaxMs")).doubleValue() * 1000);
+		} else {
+			// 版本1保存了全部耗时，按同样的大小抽样，比较时的开销与新版本一致
+			result.commits = result.commitLatencies.size();
+			for (long v : result.commitLatencies) {
+				result.commitMaxMicros = Math.max(result.commitMaxMicros, v);
+			}
+			if (result.commitLatencies.size() > LatencyReservoir.DEFAULT_CAPACITY) {
+				List<Long> shuffled = new ArrayList<>(result.commitLatencies);
+				Collections.shuffle(shuffled, new Random(42));
+				result.commitLatencies = new ArrayList<>(shuffled.subList(0, LatencyReservoir.DEFAULT_CAPACITY));
+			}
+		}
+		return result;
+	}
+
+	private static List<Long> toLongs(List<Object> values) {
+		if (values == null) {
+			return Collections.emptyList();
+		}
+		List<Long> result = new ArrayList<>(values.size());
+		for (Object v : values) {
+			result.add(((Number) v).longValue());
+		}
+		return result;
+	}
+
+	public Map<String, Object> getConfig() {
+		return config;
+	}
+
+	public Map<String, Object> getEnvironment() {
+		return environment;
+	}
+
+	public String getClientVersion() {
+		return clientVersion;
+	}
+
+	public void setClientVersion(String clientVersion) {
+		this.clientVersion = clientVersion;
+	}
+
+	public long getStartTime() {
+		return startTime;
+	}
+
+	public void setStartTime(long startTime) {
+		this.startTime = startTime;
+	}
+
+	public long getElapsedMs() {
+		return elapsedMs;
+	}
+
+	public void setElapsedMs(long elapsedMs) {
+		this.elapsedMs = elapsedMs;
+	}
+
+	public long getTotalRows() {
+		return totalRows;
+	}
+
+	public void setTotalRows(long totalRows) {
+		this.totalRows = totalRows;
+	}
+
+	public synchronized List<Long> getThroughputSamples() {
+		return throughputSamples;
+	}
+
+	public List<Long> getCommitLatencies() {
+		return commitLatencies;
+	}
+
+	public void setCommitLatencies(List<Long> commitLatencies) {
+		this.commitLatencies = commitLatencies;
+	}
+
+	public long getCommits() {
+		return commits;
+	}
+
+	public void setCommits(long commits) {
+		this.commits = commits;
+	}
+
+	public long getCommitMaxMicros() {
+		return commitMaxMicros;
+	}
+
+	public void setCommitMaxMicros(long commitMaxMicros) {
+		this.commitMaxMicros = commitMaxMicros;
+	}
+}
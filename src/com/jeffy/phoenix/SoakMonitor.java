@@ -0,0 +1,291 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jeffy.phoenix;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+/**
+ * @Author Jeffy
+ * @Email: renwu58@gmail.com
+ *
+ *         长时间运行(soak)时按固定间隔输出一行CSV，把吞吐、提交延迟与GC、堆、分配速率、线程数、连接数放在同一行，
+ *         便于观察随时间变化的趋势。
+ *
+ */
+class SoakMonitor implements Runnable {
+	public static final String HEADER = "soak,elapsed_s,rows,rows_per_s,commit_p50_ms,commit_p99_ms,commit_max_ms,schedule_lag_ms,"
+			+ "gc_count,gc_time_ms,gc_max_pause_ms,heap_after_gc_mb,heap_used_mb,alloc_mb_per_s,threads,harness_connections,zk_sessions,hconnections";
+
+	private final ProduceTestData produce;
+	private final ConsumeData consumer;
+	private final List<GarbageCollectorMXBean> gcBeans;
+	private final ThreadMXBean threadBean;
+	// 堆内存池的名称，GC通知中还包含Metaspace、CodeHeap等非堆内存池
+	private final List<String> heapPools;
+	private final NotificationListener gcListener;
+
+	private final long beginTs;
+	private long lastTs;
+	private long lastRows;
+	private long lastGcCount;
+	private long lastGcTime;
+	// 每个线程上次采样时累计分配的字节数
+	private Map<Long, Long> lastAllocated = new HashMap<>();
+
+	// 以下两项由GC通知线程更新
+	private long maxPause;
+	private long heapAfterGc;
+
+	public SoakMonitor(ProduceTestData produce, ConsumeData consumer) {
+		this.produce = produce;
+		this.consumer = consumer;
+		this.gcBeans = ManagementFactory.getGarbageCollectorMXBeans();
+		this.threadBean = ManagementFactory.getThreadMXBean();
+		this.heapPools = new ArrayList<>();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				heapPools.add(pool.getName());
+			}
+		}
+		this.gcListener = this::handleGcNotification;
+		this.beginTs = System.currentTimeMillis();
+		this.lastTs = beginTs;
+		this.lastGcCount = gcCount();
+		this.lastGcTime = gcTime();
+		allocatedSinceLast();
+	}
+
+	/**
+	 * 解析形如 30s, 10m, 4h 的时长，不带单位时按秒处理
+	 *
+	 * @param value
+	 * @return 毫秒数
+	 */
+	public static long parseDuration(String value) {
+		String v = value.trim().toLowerCase();
+		long unit = 1000L;
+		char last = v.charAt(v.length() - 1);
+		if (last == 's') {
+			v = v.substring(0, v.length() - 1);
+		} else if (last == 'm') {
+			unit = 60 * 1000L;
+			v = v.substring(0, v.length() - 1);
+		} else if (last == 'h') {
+			unit = 60 * 60 * 1000L;
+			v = v.substring(0, v.length() - 1);
+		}
+		return Long.parseLong(v) * unit;
+	}
+
+	/**
+	 * 注册GC通知，用于获取单次停顿时间和GC后的堆大小
+	 */
+	public void start() {
+		for (GarbageCollectorMXBean gc : gcBeans) {
+			if (gc instanceof NotificationEmitter) {
+				((NotificationEmitter) gc).addNotificationListener(gcListener, null, null);
+			}
+		}
+		System.out.println(HEADER);
+		consumer.setIntervalLatencies(true);
+	}
+
+	public void stop() {
+		consumer.setIntervalLatencies(false);
+		for (GarbageCollectorMXBean gc : gcBeans) {
+			if (gc instanceof NotificationEmitter) {
+				try {
+					((NotificationEmitter) gc).removeNotificationListener(gcListener);
+				} catch (Exception e) {
+					// 监听器未注册成功时忽略
+				}
+			}
+		}
+	}
+
+	private void handleGcNotification(Notification notification, Object handback) {
+		if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+			return;
+		}
+		GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo
+				.from((CompositeData) notification.getUserData());
+		Map<String, MemoryUsage> after = info.getGcInfo().getMemoryUsageAfterGc();
+		long used = 0L;
+		for (String pool : heapPools) {
+			MemoryUsage usage = after.get(pool);
+			if (usage != null) {
+				used += usage.getUsed();
+			}
+		}
+		synchronized (this) {
+			maxPause = Math.max(maxPause, info.getGcInfo().getDuration());
+			heapAfterGc = used;
+		}
+	}
+
+	/**
+	 * 输出一个统计间隔的数据
+	 */
+	@Override
+	public synchronized void run() {
+		long now = System.currentTimeMillis();
+		long rows = consumer.getCommittedRows();
+		long gcCount = gcCount();
+		long gcTime = gcTime();
+		long allocated = allocatedSinceLast();
+		double seconds = Math.max(1L, now - lastTs) / 1000.0;
+
+		List<Long> latencies = consumer.drainCommitLatencies();
+		Collections.sort(latencies);
+		Runtime rt = Runtime.getRuntime();
+
+		StringBuilder line = new StringBuilder("soak");
+		line.append(',').append((now - beginTs) / 1000);
+		line.append(',').append(rows);
+		line.append(',').append(Math.round((rows - lastRows) / seconds));
+		line.append(',').append(percentile(latencies, 0.50));
+		line.append(',').append(percentile(latencies, 0.99));
+		line.append(',').append(latencies.isEmpty() ? 0L : latencies.get(latencies.size() - 1));
+		line.append(',').append(produce.getAndResetScheduleLag());
+		line.append(',').append(gcCount - lastGcCount);
+		line.append(',').append(gcTime - lastGcTime);
+		line.append(',').append(maxPause);
+		line.append(',').append(heapAfterGc / (1024 * 1024));
+		line.append(',').append((rt.totalMemory() - rt.freeMemory()) / (1024 * 1024));
+		line.append(',').append(Math.round(allocated / seconds / (1024 * 1024)));
+		line.append(',').append(threadBean.getThreadCount());
+		line.append(',').append(consumer.getOpenConnections());
+		int[] client = clientConnections();
+		line.append(',').append(client[0]);
+		line.append(',').append(client[1]);
+		System.out.println(line);
+
+		lastTs = now;
+		lastRows = rows;
+		lastGcCount = gcCount;
+		lastGcTime = gcTime;
+		maxPause = 0L;
+	}
+
+	private static long percentile(List<Long> sorted, double p) {
+		if (sorted.isEmpty()) {
+			return 0L;
+		}
+		int idx = (int) Math.ceil(p * sorted.size()) - 1;
+		return sorted.get(Math.max(0, Math.min(sorted.size() - 1, idx)));
+	}
+
+	/**
+	 * 根据线程名统计客户端实际持有的连接。harness_connections 只是本测试自己打开的JDBC连接，整个测试期间不变，
+	 * 无法反映Phoenix/HBase客户端内部的连接泄漏，这里按下面两类线程计数:
+	 * <ul>
+	 * <li>ZooKeeper客户端每个会话有一个 xxx-SendThread(host:port) 线程</li>
+	 * <li>HBase每个HConnection的线程池线程名以 hconnection-0x&lt;id&gt; 开头，按不同的id计数</li>
+	 * </ul>
+	 *
+	 * @return ZooKeeper会话数, HConnection数
+	 */
+	private int[] clientConnections() {
+		int zkSessions = 0;
+		Set<String> hconnections = new HashSet<>();
+		for (ThreadInfo info : threadBean.getThreadInfo(threadBean.getAllThreadIds())) {
+			if (info == null) {
+				continue;
+			}
+			String name = info.getThreadName();
+			if (name.contains("-SendThread(")) {
+				zkSessions++;
+			} else if (name.startsWith("hconnection-0x")) {
+				int end = name.indexOf('-', "hconnection-0x".length());
+				hconnections.add(end < 0 ? name : name.substring(0, end));
+			}
+		}
+		return new int[] { zkSessions, hconnections.size() };
+	}
+
+	private long gcCount() {
+		long count = 0L;
+		for (GarbageCollectorMXBean gc : gcBeans) {
+			count += Math.max(0L, gc.getCollectionCount());
+		}
+		return count;
+	}
+
+	private long gcTime() {
+		long time = 0L;
+		for (GarbageCollectorMXBean gc : gcBeans) {
+			time += Math.max(0L, gc.getCollectionTime());
+		}
+		return time;
+	}
+
+	/**
+	 * 自上次采样以来分配的字节数，JVM不支持时返回0。
+	 *
+	 * 按线程分别计算差值再求和: 退出的线程不再出现，新线程从0开始计算，HBase客户端线程池的线程退出或新建不会使结果偏小或为负。
+	 * 线程在两次采样之间退出时，它最后一段的分配量无法统计。
+	 *
+	 * @return
+	 */
+	private long allocatedSinceLast() {
+		if (!(threadBean instanceof com.sun.management.ThreadMXBean)) {
+			return 0L;
+		}
+		com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threadBean;
+		if (!bean.isThreadAllocatedMemorySupported() || !bean.isThreadAllocatedMemoryEnabled()) {
+			return 0L;
+		}
+		long[] ids = bean.getAllThreadIds();
+		long[] allocated = bean.getThreadAllocatedBytes(ids);
+		Map<Long, Long> current = new HashMap<>(ids.length * 2);
+		long total = 0L;
+		for (int i = 0; i < ids.length; i++) {
+			if (allocated[i] < 0) {
+				// 线程已经退出
+				continue;
+			}
+			Long last = lastAllocated.get(ids[i]);
+			long delta = allocated[i] - (last == null ? 0L : last);
+			if (delta > 0) {
+				total += delta;
+			}
+			current.put(ids[i], allocated[i]);
+		}
+		lastAllocated = current;
+		return total;
+	}
+}
@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jeffy.phoenix;
+
+import java.util.Date;
+
+class TestData implements Data {
+	// Phoenix KeyValue的固定开销: keyLength(4) + valueLength(4) + rowLength(2) + familyLength(1) +
+	// timestamp(8) + type(1)
+	private static final int KEY_VALUE_OVERHEAD = 4 + 4 + 2 + 1 + 8 + 1;
+	// 默认列族 "0"
+	private static final int FAMILY_LENGTH = 1;
+	// Phoenix TIMESTAMP 类型序列化为 8字节毫秒 + 4字节纳秒
+	private static final int TIMESTAMP_LENGTH = 12;
+	private String tenantId;
+	private long id;
+	private String name;
+	private Date createDate;
+	private Date updateDate;
+	private long sessionId;
+	private String description;
+
+	// 缓存计算好的字节数，生产者申请和消费者释放预算时使用同一个值
+	private int size = -1;
+
+	/**
+	 * 计算一个Data对象在Phoenix客户端Mutation缓冲中占用的字节数。
+	 * 
+	 * 行键为 salt(1) + tenantid + 分隔符(1) + id(8) + name，VARCHAR 按UTF-8编码；
+	 * 每个非主键列(含空列 _0)都是一个独立的KeyValue，各自携带一份完整的行键。
+	 * 
+	 * @return
+	 */
+	public int size() {
+		if (size < 0) {
+			size = size(utf8Length(tenantId), utf8Length(name), utf8Length(description));
+		}
+		return size;
+	}
+
+	/**
+	 * 根据各个VARCHAR列按UTF-8编码后的字节数计算一行数据占用的字节数，见 size()
+	 * 
+	 * @param tenantBytes
+	 * @param nameBytes
+	 * @param descriptionBytes
+	 * @return
+	 */
+	static int size(int tenantBytes, int nameBytes, int descriptionBytes) {
+		int rowKey = 1 + tenantBytes + 1 + 8 + nameBytes;
+		int cell = KEY_VALUE_OVERHEAD + rowKey + FAMILY_LENGTH;
+		return (cell + "CREATETS".length() + TIMESTAMP_LENGTH) + (cell + "UPDATETS".length() + TIMESTAMP_LENGTH)
+				+ (cell + "SESSIONID".length() + 8) + (cell + "DESCRIPTION".length() + descriptionBytes)
+				+ (cell + "_0".length());
+	}
+
+	/**
+	 * 计算字符串按UTF-8编码后的字节数，不产生临时的byte[]
+	 * 
+	 * @param s
+	 * @return
+	 */
+	static int utf8Length(String s) {
+		if (s == null) {
+			return 0;
+		}
+		int len = 0;
+		for (int i = 0, n = s.length(); i < n; i++) {
+			char c = s.charAt(i);
+			if (c < 0x80) {
+				len += 1;
+			} else if (c < 0x800) {
+				len += 2;
+			} else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+				len += 4;
+				i++;
+			} else {
+				len += 3;
+			}
+		}
+		return len;
+	}
+
+	/**
+	 * 计算字符数组中一段字符按UTF-8编码后的字节数
+	 * 
+	 * @param chars
+	 * @param offset
+	 * @param length
+	 * @return
+	 */
+	static int utf8Length(char[] chars, int offset, int length) {
+		int len = 0;
+		for (int i = offset, n = offset + length; i < n; i++) {
+			char c = chars[i];
+			if (c < 0x80) {
+				len += 1;
+			} else if (c < 0x800) {
+				len += 2;
+			} else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(chars[i + 1])) {
+				len += 4;
+				i++;
+			} else {
+				len += 3;
+			}
+		}
+		return len;
+	}
+
+	public String getTenantId() {
+		return tenantId;
+	}
+
+	public void setTenantId(String tenantId) {
+		this.tenantId = tenantId;
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public void setId(long id) {
+		this.id = id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public Date getCreateDate() {
+		return createDate;
+	}
+
+	public void setCreateDate(Date createDate) {
+		this.createDate = createDate;
+	}
+
+	public Date getUpdateDate() {
+		return updateDate;
+	}
+
+	public void setUpdateDate(Date updateDate) {
+		this.updateDate = updateDate;
+	}
+
+	public long getSessionId() {
+		return sessionId;
+	}
+
+	public void setSessionId(long sessionId) {
+		this.sessionId = sessionId;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	public void setDescription(String description) {
+		this.description = description;
+	}
+
+	@Override
+	public String toString() {
+		return "Data [tenantId=" + tenantId + ", id=" + id + ", name=" + name + ", createDate=" + createDate + ", updateDate=" + updateDate
+				+ ", sessionId=" + sessionId + ", description=" + description + "]";
+	}
+}